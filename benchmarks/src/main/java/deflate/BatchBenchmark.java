@@ -0,0 +1,69 @@
+package deflate;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Times compressing a batch of small inputs with BatchCompressor at
+ * concurrency limits from 1 up, so that the batch latency can be compared
+ * against the cores in use. The score is per batch.
+ * @author Ridge Shrubsall (21112211)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchBenchmark {
+	@Param({"1", "2", "4", "8", "16"})
+	public int limit;
+	
+	@Param({"2000"})
+	public int count;
+	
+	@Param({"4096"})
+	public int size;
+	
+	private List<byte[]> inputs;
+	private BatchCompressor batch;
+	
+	/**
+	 * Create inputs of text lines, each of exactly the input size, and a
+	 * compressor with the concurrency limit.
+	 */
+	@Setup
+	public void setup() {
+		Random random = new Random(count);
+		inputs = new ArrayList<byte[]>(count);
+		for (int i = 0; i < count; i++) {
+			StringBuilder sb = new StringBuilder();
+			while (sb.length() < size) {
+				sb.append("object ").append(i).append(", field ").append(random.nextInt(100)).append(" = ").append(random.nextInt(10000)).append('\n');
+			}
+			inputs.add(Arrays.copyOf(sb.toString().getBytes(), size));
+		}
+		batch = new BatchCompressor(limit);
+	}
+	
+	@TearDown
+	public void tearDown() {
+		batch.close();
+	}
+	
+	/**
+	 * Compress the batch and wait for all of it.
+	 * @return The total size of the compressed data
+	 */
+	@Benchmark
+	public long compressAll() {
+		List<CompletableFuture<BatchCompressor.Result>> results = batch.compressAll(inputs);
+		long total = 0;
+		for (CompletableFuture<BatchCompressor.Result> result : results) {
+			total += result.join().getBytes().length;
+		}
+		return total;
+	}
+}
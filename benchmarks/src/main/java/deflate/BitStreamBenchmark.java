@@ -0,0 +1,62 @@
+package deflate;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Times reading and writing bit fields of 1 to 15 bits (the range
+ * used for codes and extra bits) through the bit streams.
+ * @author Ridge Shrubsall (21112211)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitStreamBenchmark {
+	/**
+	 * The number of fields read or written in each operation.
+	 */
+	public static final int FIELDS = 4096;
+	
+	private int[] values;
+	private int[] widths;
+	private byte[] encoded;
+	
+	@Setup
+	public void setup() throws IOException {
+		java.util.Random random = new java.util.Random(1);
+		values = new int[FIELDS];
+		widths = new int[FIELDS];
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BitOutputStream output = new BitOutputStream(out);
+		for (int i = 0; i < FIELDS; i++) {
+			widths[i] = 1 + random.nextInt(15);
+			values[i] = random.nextInt(1 << widths[i]);
+			output.writeBits(values[i], widths[i]);
+		}
+		output.flushBits();
+		encoded = out.toByteArray();
+	}
+	
+	@Benchmark
+	public void readBits(Blackhole bh) throws IOException {
+		BitInputStream input = new BitInputStream(new ByteArrayInputStream(encoded));
+		for (int i = 0; i < FIELDS; i++) {
+			bh.consume(input.readBits(widths[i]));
+		}
+	}
+	
+	@Benchmark
+	public long writeBits() throws IOException {
+		BitOutputStream output = new BitOutputStream(OutputStream.nullOutputStream());
+		for (int i = 0; i < FIELDS; i++) {
+			output.writeBits(values[i], widths[i]);
+		}
+		output.flushBits();
+		return output.getCount();
+	}
+}
@@ -0,0 +1,42 @@
+package deflate;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Times CRC-32 over buffers of different sizes, against java.util.zip.CRC32
+ * (which uses the CPU's carry-less multiply instructions) as a baseline.
+ * @author Ridge Shrubsall (21112211)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CRC32Benchmark {
+	@Param({"64", "4096", "65536"})
+	public int size;
+	
+	private byte[] data;
+	
+	@Setup
+	public void setup() {
+		data = new byte[size];
+		new java.util.Random(1).nextBytes(data);
+	}
+	
+	@Benchmark
+	public int update() {
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length);
+		return crc.getValue();
+	}
+	
+	@Benchmark
+	public long updateJdk() {
+		java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+		crc.update(data, 0, data.length);
+		return crc.getValue();
+	}
+}
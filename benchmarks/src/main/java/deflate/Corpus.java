@@ -0,0 +1,53 @@
+package deflate;
+
+import java.io.*;
+import java.nio.file.Files;
+
+/**
+ * Loads files from the testdata/ folder for the benchmarks. The folder
+ * is found from the working directory (the project or the benchmarks
+ * module), or set with -Ddeflate.testdata=path.
+ * @author Ridge Shrubsall (21112211)
+ */
+public class Corpus {
+	/**
+	 * Read a file from the testdata/ folder.
+	 * @param name The file name
+	 * @return The file contents
+	 */
+	public static byte[] load(String name) throws IOException {
+		String dir = System.getProperty("deflate.testdata");
+		if (dir == null) {
+			dir = new File("testdata").isDirectory() ? "testdata" : "../testdata";
+		}
+		return Files.readAllBytes(new File(dir, name).toPath());
+	}
+	
+	/**
+	 * Compress data with the given strategy and match finder.
+	 * @param data The data
+	 * @param strategy The strategy (one of the Deflater.S_ constants)
+	 * @param finder The match finder (one of the Deflater.F_ constants)
+	 * @return The compressed data
+	 */
+	public static byte[] deflate(byte[] data, int strategy, int finder) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+		Deflater deflater = new Deflater(null, new BitInputStream(new ByteArrayInputStream(data)), new BitOutputStream(out), strategy);
+		deflater.setMatchFinder(finder);
+		deflater.process();
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Decompress data.
+	 * @param data The compressed data
+	 * @param size The uncompressed size (to size the output buffer)
+	 * @return The uncompressed data
+	 */
+	public static byte[] inflate(byte[] data, int size) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+		Inflater inflater = new Inflater(null, new BitInputStream(new ByteArrayInputStream(data)), new BitOutputStream(out));
+		inflater.process();
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,41 @@
+package deflate;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Times compressing and decompressing each file in testdata/ as a whole
+ * stream, with the default strategy and match finder.
+ * @author Ridge Shrubsall (21112211)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+	@Param({"21-Compression.pdf", "acm.txt", "e.txt", "longruns.txt", "pi.txt",
+			"project_classes.tar", "project_java.tar", "tom_sawyer.txt"})
+	public String file;
+	
+	private byte[] data;
+	private byte[] compressed;
+	
+	@Setup
+	public void setup() throws IOException {
+		data = Corpus.load(file);
+		compressed = Corpus.deflate(data, Deflater.S_DEFAULT, Deflater.F_LINEAR);
+	}
+	
+	@Benchmark
+	public byte[] compress() throws IOException {
+		return Corpus.deflate(data, Deflater.S_DEFAULT, Deflater.F_LINEAR);
+	}
+	
+	@Benchmark
+	public byte[] decompress() throws IOException {
+		return Corpus.inflate(compressed, data.length);
+	}
+}
@@ -0,0 +1,86 @@
+package deflate;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Times each match finder on the first 64 KiB of a file, with the default
+ * and the largest window, for a greedy parse (one search per symbol) and
+ * for finding all matches at every position (as the optimal parse does).
+ * The finder is created once and reset before each invocation, outside
+ * the timed code.
+ * @author Ridge Shrubsall (21112211)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FinderBenchmark {
+	/**
+	 * The amount of each file to search.
+	 */
+	private static final int SIZE = 65536;
+	
+	@Param({"linear", "chain", "tree"})
+	public String finder;
+	
+	@Param({"tom_sawyer.txt", "project_java.tar", "longruns.txt"})
+	public String file;
+	
+	@Param({"256", "32768"})
+	public int window;
+	
+	private byte[] data;
+	private int[] dists;
+	private int[] lens;
+	private MatchFinder matchFinder;
+	
+	@Setup
+	public void setup() throws IOException {
+		byte[] b = Corpus.load(file);
+		data = java.util.Arrays.copyOf(b, Math.min(SIZE, b.length));
+		dists = new int[258];
+		lens = new int[258];
+		if (finder.equals("chain")) {
+			matchFinder = new HashChainFinder(window);
+		} else if (finder.equals("tree")) {
+			matchFinder = new BinaryTreeFinder(window);
+		} else {
+			matchFinder = new LinearFinder(window);
+		}
+	}
+	
+	@Setup(Level.Invocation)
+	public void reset() {
+		matchFinder.reset();
+	}
+	
+	@Benchmark
+	public long greedy() {
+		MatchFinder window = matchFinder;
+		long symbols = 0;
+		int i = 0;
+		while (i < data.length) {
+			LZPair pair = window.find(data, i, data.length, 3);
+			int n = (pair != null) ? pair.len : 1;
+			window.add(n);
+			i += n;
+			symbols++;
+		}
+		return symbols;
+	}
+	
+	@Benchmark
+	public long findAll() {
+		MatchFinder window = matchFinder;
+		long matches = 0;
+		for (int i = 0; i < data.length; i++) {
+			matches += window.findAll(data, i, data.length, dists, lens);
+			window.add(1);
+		}
+		return matches;
+	}
+}
@@ -0,0 +1,47 @@
+package deflate;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Times building a length-limited Huffman tree and its code table, for
+ * the byte frequencies of a file (as a literal-only block would have)
+ * or for the worst case of Fibonacci frequencies, which needs balancing.
+ * @author Ridge Shrubsall (21112211)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HuffmanTreeBenchmark {
+	@Param({"tom_sawyer.txt", "21-Compression.pdf", "fibonacci"})
+	public String file;
+	
+	private int[] freq;
+	
+	@Setup
+	public void setup() throws IOException {
+		if (file.equals("fibonacci")) {
+			freq = new int[21];
+			freq[0] = 1;
+			freq[1] = 1;
+			for (int i = 2; i < freq.length; i++) {
+				freq[i] = freq[i-1] + freq[i-2];
+			}
+		} else {
+			freq = new int[286];
+			for (byte b : Corpus.load(file)) {
+				freq[b & 0xff]++;
+			}
+			freq[256] = 1;                                          // End of block
+		}
+	}
+	
+	@Benchmark
+	public HuffmanTable build() {
+		return new HuffmanTree(freq, 15).getTable();
+	}
+}
@@ -0,0 +1,76 @@
+package deflate;
+
+import java.io.*;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Times decoding Huffman symbols with Inflater.readSymbol, using codes
+ * built from the byte frequencies of a file and the first bytes of the
+ * file as the symbols.
+ * @author Ridge Shrubsall (21112211)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InflaterBenchmark {
+	/**
+	 * The number of symbols decoded in each operation.
+	 */
+	public static final int SYMBOLS = 4096;
+	
+	@Param({"tom_sawyer.txt", "21-Compression.pdf"})
+	public String file;
+	
+	private byte[] encoded;
+	private List<Integer> codes;
+	private Map<Integer, List<Integer>> codeMap;
+	private Inflater inflater;
+	
+	@Setup
+	public void setup() throws IOException {
+		byte[] data = Corpus.load(file);
+		int[] freq = new int[286];
+		for (byte b : data) {
+			freq[b & 0xff]++;
+		}
+		freq[256] = 1;
+		HuffmanTable table = new HuffmanTree(freq, 15).getTable();
+		
+		// Encode the symbols as a Huffman block would
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BitOutputStream output = new BitOutputStream(out);
+		for (int i = 0; i < SYMBOLS; i++) {
+			int sym = data[i % data.length] & 0xff;
+			output.writeBitsR(table.code[sym], table.codeLen[sym]);
+		}
+		output.flushBits();
+		encoded = out.toByteArray();
+		
+		Inflater inflater = new Inflater(null, null, null);
+		codes = inflater.buildCodes(table.codeLen);
+		codeMap = inflater.buildCodeMap(codes, table.codeLen);
+	}
+	
+	/**
+	 * Start each operation with a new inflater over the encoded symbols,
+	 * outside of the timed region.
+	 */
+	@Setup(Level.Invocation)
+	public void rewind() {
+		inflater = new Inflater(null, new BitInputStream(new ByteArrayInputStream(encoded)), null);
+	}
+	
+	@Benchmark
+	public void readSymbol(Blackhole bh) throws IOException {
+		for (int i = 0; i < SYMBOLS; i++) {
+			bh.consume(inflater.readSymbol(codes, codeMap));
+		}
+	}
+}
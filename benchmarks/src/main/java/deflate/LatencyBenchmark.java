@@ -0,0 +1,133 @@
+package deflate;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Times compressing and decompressing small messages one at a time, as a
+ * message service would, each as its own zlib stream. Every operation is
+ * sampled, so JMH reports the latency percentiles (run with -prof gc for
+ * the bytes allocated per operation). java.util.zip's Deflater and
+ * Inflater, reused across messages, are the baseline.
+ * @author Ridge Shrubsall (21112211)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatencyBenchmark {
+	/**
+	 * The number of different messages (used in turn).
+	 */
+	private static final int NUM_MESSAGES = 256;
+	
+	/**
+	 * The fields of the generated messages.
+	 */
+	private static final String[] USERS = {"alice", "bob", "carol", "dave", "erin", "frank"};
+	private static final String[] ACTIONS = {"login", "logout", "view", "purchase", "search", "update"};
+	
+	@Param({"100", "512", "1024", "4096"})
+	public int size;
+	
+	private byte[][] messages;
+	private byte[][] compressed;
+	private byte[][] zipCompressed;
+	private int next;
+	
+	private ZLibCompressor zlib;
+	private java.util.zip.Deflater deflater;
+	private java.util.zip.Inflater inflater;
+	private byte[] buffer;
+	
+	/**
+	 * Create messages that look like JSON log records, each of exactly the
+	 * message size, and compress them with both codecs.
+	 */
+	@Setup
+	public void setup() throws IOException {
+		Random random = new Random(size);
+		messages = new byte[NUM_MESSAGES][];
+		for (int m = 0; m < NUM_MESSAGES; m++) {
+			StringBuilder sb = new StringBuilder("[");
+			while (sb.length() < size) {
+				sb.append(String.format(Locale.ROOT, "{\"id\": %d, \"user\": \"%s\", \"action\": \"%s\", \"status\": %d, \"ms\": %d},",
+						random.nextInt(1000000), USERS[random.nextInt(USERS.length)], ACTIONS[random.nextInt(ACTIONS.length)],
+						random.nextInt(8) == 0 ? 404 : 200, random.nextInt(500)));
+			}
+			messages[m] = Arrays.copyOf(sb.toString().getBytes(), size);
+		}
+		
+		zlib = new ZLibCompressor();
+		deflater = new java.util.zip.Deflater();
+		inflater = new java.util.zip.Inflater();
+		buffer = new byte[65536];
+		compressed = new byte[NUM_MESSAGES][];
+		zipCompressed = new byte[NUM_MESSAGES][];
+		for (int m = 0; m < NUM_MESSAGES; m++) {
+			compressed[m] = compressStream(messages[m]);
+			zipCompressed[m] = zipCompress(messages[m]);
+		}
+	}
+	
+	@TearDown
+	public void tearDown() {
+		deflater.end();
+		inflater.end();
+	}
+	
+	/**
+	 * Get the number of the next message.
+	 * @return The message number
+	 */
+	private int next() {
+		next = (next + 1) % NUM_MESSAGES;
+		return next;
+	}
+	
+	private byte[] compressStream(byte[] message) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		zlib.compressStream(new ByteArrayInputStream(message), out);
+		return out.toByteArray();
+	}
+	
+	private byte[] zipCompress(byte[] message) {
+		deflater.reset();
+		deflater.setInput(message);
+		deflater.finish();
+		int n = deflater.deflate(buffer);
+		return Arrays.copyOf(buffer, n);
+	}
+	
+	@Benchmark
+	public byte[] compress() throws IOException {
+		return compressStream(messages[next()]);
+	}
+	
+	@Benchmark
+	public byte[] decompress() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		zlib.decompress(new ByteArrayInputStream(compressed[next()]), out);
+		return out.toByteArray();
+	}
+	
+	@Benchmark
+	public byte[] compressJdk() {
+		return zipCompress(messages[next()]);
+	}
+	
+	@Benchmark
+	public byte[] decompressJdk() throws DataFormatException {
+		inflater.reset();
+		inflater.setInput(zipCompressed[next()]);
+		int n = inflater.inflate(buffer);
+		return Arrays.copyOf(buffer, n);
+	}
+}
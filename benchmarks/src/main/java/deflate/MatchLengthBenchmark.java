@@ -0,0 +1,83 @@
+package deflate;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Times measuring matches a word at a time against a byte at a time, for
+ * a range of match lengths. Each operation measures 1024 matches, and the
+ * score is per match.
+ * @author Ridge Shrubsall (21112211)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchLengthBenchmark {
+	/**
+	 * The number of matches measured in each operation.
+	 */
+	public static final int MATCHES = 1024;
+	
+	/**
+	 * The distance between the two strings.
+	 */
+	private static final int DIST = 1000;
+	
+	@Param({"3", "4", "8", "16", "32", "64", "128", "258"})
+	public int length;
+	
+	private byte[] data;
+	private int[] offsets;
+	
+	/**
+	 * Create data that repeats itself at the test distance, except for
+	 * one changed byte after every run of the match length, and check that
+	 * both methods measure every match at that length.
+	 */
+	@Setup
+	public void setup() {
+		data = new byte[1 << 16];
+		java.util.Random random = new java.util.Random(length);
+		for (int i = 0; i < data.length; i++) {
+			if (i < DIST) {
+				data[i] = (byte) random.nextInt(256);
+			} else if ((i - DIST) % (length + 1) != length) {
+				data[i] = data[i - DIST];                           // Repeat the data a distance back
+			} else {
+				data[i] = (byte) (data[i - DIST] + 1 + random.nextInt(255));
+			}
+		}
+		offsets = new int[(1 << 16) / (length + 1) - DIST / (length + 1) - 2];
+		for (int i = 0; i < offsets.length; i++) {
+			offsets[i] = DIST + i * (length + 1);
+		}
+		if (bytes() != (long) length * MATCHES || words() != (long) length * MATCHES) {
+			throw new AssertionError("Match lengths differ");
+		}
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(MATCHES)
+	public long bytes() {
+		long sum = 0;
+		for (int i = 0; i < MATCHES; i++) {
+			int y = offsets[i % offsets.length];
+			sum += MatchLength.compareBytes(data, y - DIST, y, 258);
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(MATCHES)
+	public long words() {
+		long sum = 0;
+		for (int i = 0; i < MATCHES; i++) {
+			int y = offsets[i % offsets.length];
+			sum += MatchLength.compare(data, y - DIST, y, 258);
+		}
+		return sum;
+	}
+}
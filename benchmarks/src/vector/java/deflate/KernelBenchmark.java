@@ -0,0 +1,109 @@
+package deflate;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares the scalar and vector kernels on each file in testdata/:
+ * measuring the match at the last position with the same 4 bytes, and
+ * sliding the window through the file. The score is per file.
+ * @author Ridge Shrubsall (21112211)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector"})
+public class KernelBenchmark {
+	/**
+	 * The window size and the amount read between slides.
+	 */
+	private static final int WINDOW_SIZE = 32768;
+	private static final int BUFFER_SIZE = 65536;
+	
+	@Param({"scalar", "vector"})
+	public String kernels;
+	
+	@Param({"21-Compression.pdf", "acm.txt", "e.txt", "longruns.txt", "pi.txt",
+			"project_classes.tar", "project_java.tar", "tom_sawyer.txt"})
+	public String file;
+	
+	private Kernels k;
+	private byte[] data;
+	private int[] cand;
+	private byte[] buffer;
+	
+	/**
+	 * Load the kernels and the file, find the match candidates, and check
+	 * that the kernels agree with the scalar ones.
+	 */
+	@Setup
+	public void setup() throws IOException {
+		k = Kernels.load(kernels.equals("vector"));
+		if (kernels.equals("vector") && k.getClass() == Kernels.class) {
+			throw new IllegalStateException("Vector kernels not available");
+		}
+		data = Corpus.load(file);
+		buffer = new byte[WINDOW_SIZE + BUFFER_SIZE];
+		
+		// Find the last earlier position with the same 4 bytes for each position
+		int[] table = new int[1 << 16];
+		Arrays.fill(table, -1);
+		cand = new int[data.length];
+		Arrays.fill(cand, -1);
+		for (int i = 0; i + 4 <= data.length; i++) {
+			int h = ((data[i] & 0xff) | (data[i + 1] & 0xff) << 8 | (data[i + 2] & 0xff) << 16 | (data[i + 3] & 0xff) << 24);
+			h = (h * 0x9e3779b1) >>> 16;
+			if (table[h] >= i - WINDOW_SIZE) {
+				cand[i] = table[h];
+			}
+			table[h] = i;
+		}
+		
+		if (matches(k) != matches(new Kernels())) {
+			throw new AssertionError("Match lengths differ for " + k.getName());
+		}
+	}
+	
+	/**
+	 * Measure the match at each candidate.
+	 * @param k The kernels
+	 * @return The sum of the match lengths
+	 */
+	private long matches(Kernels k) {
+		long sum = 0;
+		for (int i = 0; i < cand.length; i++) {
+			if (cand[i] >= 0) {
+				sum += k.matchLength(data, cand[i], i, Math.min(258, data.length - i));
+			}
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	public long matches() {
+		return matches(k);
+	}
+	
+	/**
+	 * Read the file through a sliding buffer (as the deflater does).
+	 * @return The last byte read
+	 */
+	@Benchmark
+	public byte slide() {
+		int end = 0;
+		for (int off = 0; off < data.length; ) {
+			int keep = Math.max(0, end - WINDOW_SIZE);
+			k.copy(buffer, keep, buffer, 0, end - keep);
+			end -= keep;
+			int len = Math.min(buffer.length - end, data.length - off);
+			System.arraycopy(data, off, buffer, end, len);
+			end += len;
+			off += len;
+		}
+		return buffer[end - 1];
+	}
+}
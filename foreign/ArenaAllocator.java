@@ -0,0 +1,83 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/**
+ * Allocates the tables of a match finder off the heap, from a confined
+ * arena that is freed as soon as the allocator is closed. The tables must
+ * only be used by the thread that created the allocator. This needs the
+ * Foreign Memory API (Java 22, or Java 21 with --enable-preview), and is
+ * loaded through TableAllocator.offHeap().
+ * @author Ridge Shrubsall (21112211)
+ */
+public class ArenaAllocator extends TableAllocator {
+	/**
+	 * The arena the tables are allocated from.
+	 */
+	private Arena arena;
+	
+	/**
+	 * Create a new allocator.
+	 */
+	public ArenaAllocator() {
+		arena = Arena.ofConfined();
+	}
+	
+	/**
+	 * Check whether the tables are allocated off the heap.
+	 * @return True if off-heap
+	 */
+	public boolean isOffHeap() {
+		return true;
+	}
+	
+	/**
+	 * Allocate a table, with every value set to the given value.
+	 * @param size The number of values
+	 * @param value The initial value
+	 * @return The table
+	 */
+	public IntTable allocate(int size, int value) {
+		MemorySegment segment = arena.allocate(ValueLayout.JAVA_INT.byteSize() * size, ValueLayout.JAVA_INT.byteAlignment());
+		if (value == -1) {
+			segment.fill((byte) -1);                                // All bits set
+		} else if (value != 0) {
+			for (int i = 0; i < size; i++) {
+				segment.setAtIndex(ValueLayout.JAVA_INT, i, value);
+			}
+		}
+		return new SegmentTable(segment, size);
+	}
+	
+	/**
+	 * Free every table allocated so far. Any later access to them fails.
+	 */
+	public void close() {
+		arena.close();
+	}
+	
+	/**
+	 * A table stored in a memory segment.
+	 */
+	static class SegmentTable implements IntTable {
+		private final MemorySegment segment;
+		private final int size;
+		
+		SegmentTable(MemorySegment segment, int size) {
+			this.segment = segment;
+			this.size = size;
+		}
+		
+		public int get(int i) {
+			return segment.getAtIndex(ValueLayout.JAVA_INT, i);
+		}
+		
+		public void set(int i, int value) {
+			segment.setAtIndex(ValueLayout.JAVA_INT, i, value);
+		}
+		
+		public int size() {
+			return size;
+		}
+	}
+}
@@ -0,0 +1,154 @@
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Runs many compressors in parallel, each creating a new hash chain finder
+ * for every stream, first with heap tables and then with off-heap tables,
+ * and reports the garbage collections in each phase.
+ * e.g. java --enable-preview -cp target/classes GCLoadTest -t 8 -s 10 testdata/*
+ * @author Ridge Shrubsall (21112211)
+ */
+public class GCLoadTest {
+	/**
+	 * The window size (the largest DEFLATE allows).
+	 */
+	private static final int WINDOW_SIZE = 32768;
+	
+	/**
+	 * The seconds spent warming up before each phase.
+	 */
+	private static final int WARMUP_SECONDS = 2;
+	
+	
+	/**
+	 * The number of collections, their total and longest pause (in ms),
+	 * while recording.
+	 */
+	private static final AtomicLong gcCount = new AtomicLong();
+	private static final AtomicLong gcTotal = new AtomicLong();
+	private static final AtomicLong gcMax = new AtomicLong();
+	private static volatile boolean recording;
+	
+	/**
+	 * Parse one stream greedily with a new finder.
+	 * @param b The data
+	 * @param offHeap Whether to allocate the finder's tables off the heap
+	 * @return The number of symbols
+	 */
+	private static long parse(byte[] b, boolean offHeap) {
+		try (TableAllocator tables = offHeap ? TableAllocator.offHeap() : new TableAllocator()) {
+			MatchFinder window = new HashChainFinder(WINDOW_SIZE, tables);
+			long symbols = 0;
+			int i = 0;
+			while (i < b.length) {
+				LZPair pair = window.find(b, i, b.length, 3);
+				int n = (pair != null) ? pair.len : 1;
+				window.add(n);
+				i += n;
+				symbols++;
+			}
+			return symbols;
+		}
+	}
+	
+	/**
+	 * Compress the files on every thread until the time is up.
+	 * @param files The file contents
+	 * @param threads The number of threads
+	 * @param seconds The number of seconds
+	 * @param offHeap Whether to allocate the finders' tables off the heap
+	 * @return The number of streams compressed
+	 */
+	private static long run(final List<byte[]> files, int threads, int seconds, final boolean offHeap) throws InterruptedException {
+		final long endTime = System.nanoTime() + seconds * 1000000000L;
+		final AtomicLong streams = new AtomicLong();
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final int first = t;
+			workers[t] = new Thread(() -> {
+				for (int i = first; System.nanoTime() < endTime; i++) {
+					parse(files.get(i % files.size()), offHeap);
+					streams.incrementAndGet();
+				}
+			});
+			workers[t].start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		return streams.get();
+	}
+	
+	/**
+	 * Listen for the end of each garbage collection.
+	 */
+	private static void listen() {
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			((NotificationEmitter) gc).addNotificationListener((notification, handback) -> {
+				if (!recording || !notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) return;
+				GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+				long duration = info.getGcInfo().getDuration();
+				gcCount.incrementAndGet();
+				gcTotal.addAndGet(duration);
+				gcMax.accumulateAndGet(duration, Math::max);
+			}, null, null);
+		}
+	}
+	
+	/**
+	 * Main method to run the load test from command line.
+	 */
+	public static void main(String[] args) throws Exception {
+		// Parse arguments
+		int threads = Runtime.getRuntime().availableProcessors();
+		int seconds = 10;
+		int first = 0;
+		while (first + 1 < args.length && args[first].startsWith("-")) {
+			if (args[first].equals("-t")) {
+				threads = Integer.parseInt(args[first + 1]);
+			} else if (args[first].equals("-s")) {
+				seconds = Integer.parseInt(args[first + 1]);
+			} else {
+				break;
+			}
+			first += 2;
+		}
+		if (first == args.length) {
+			System.out.println("Usage:");
+			System.out.println("\tjava --enable-preview GCLoadTest [-t threads] [-s seconds] [file...]");
+			System.exit(1);
+		}
+		if (!TableAllocator.offHeap().isOffHeap()) {
+			System.out.println("Off-heap tables not available (needs Java 22, or Java 21 with --enable-preview)");
+			System.exit(1);
+		}
+		List<byte[]> files = new ArrayList<byte[]>();
+		for (int f = first; f < args.length; f++) {
+			files.add(Files.readAllBytes(new File(args[f]).toPath()));
+		}
+		listen();
+		
+		System.out.println(String.format("Threads: %d, window size: %d, %d seconds per phase", threads, WINDOW_SIZE, seconds));
+		System.out.println(String.format("%-10s %12s %8s %12s %12s", "Tables", "Streams/s", "GCs", "Total ms", "Max ms"));
+		for (boolean offHeap : new boolean[] {false, true}) {
+			run(files, threads, WARMUP_SECONDS, offHeap);
+			System.gc();
+			gcCount.set(0);
+			gcTotal.set(0);
+			gcMax.set(0);
+			recording = true;
+			long streams = run(files, threads, seconds, offHeap);
+			recording = false;
+			System.out.println(String.format("%-10s %12.1f %8d %12d %12d", offHeap ? "off heap" : "heap",
+					(double) streams / seconds, gcCount.get(), gcTotal.get(), gcMax.get()));
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/**
+ * Implements the Adler-32 checksum used by the zlib format.
+ * (see RFC 1950, section 8.2)
+ * @author Ridge Shrubsall (21112211)
+ */
+public class Adler32 implements Checksum {
+	/**
+	 * The largest prime smaller than 65536.
+	 */
+	private static final int BASE = 65521;
+	
+	/**
+	 * The most bytes that can be summed before the sums
+	 * must be reduced to avoid overflow.
+	 */
+	private static final int NMAX = 5552;
+	
+	
+	/**
+	 * The two running sums.
+	 */
+	private int s1;
+	private int s2;
+	
+	/**
+	 * Create a new checksum.
+	 */
+	public Adler32() {
+		s1 = 1;
+		s2 = 0;
+	}
+	
+	/**
+	 * Return the current value of the checksum.
+	 * @return The current Adler-32 value
+	 */
+	public int getValue() {
+		return (s2 << 16) | s1;
+	}
+	
+	/**
+	 * Reset the checksum to its initial value.
+	 */
+	public void reset() {
+		s1 = 1;
+		s2 = 0;
+	}
+	
+	/**
+	 * Update the current checksum with the given byte.
+	 * @param b The byte
+	 */
+	public void update(byte b) {
+		s1 = (s1 + (b & 0xff)) % BASE;
+		s2 = (s2 + s1) % BASE;
+	}
+	
+	/**
+	 * Update the current checksum with the given bytes.
+	 * @param b The byte array
+	 */
+	public void update(byte[] b) {
+		update(b, 0, b.length);
+	}
+	
+	/**
+	 * Update the current checksum with the given bytes.
+	 * @param b The byte array
+	 * @param off The starting offset
+	 * @param len The number of bytes
+	 */
+	public void update(byte[] b, int off, int len) {
+		while (len > 0) {
+			int n = Math.min(len, NMAX);
+			for (int i = off; i < off + n; i++) {
+				s1 += b[i] & 0xff;
+				s2 += s1;
+			}
+			s1 %= BASE;
+			s2 %= BASE;
+			off += n;
+			len -= n;
+		}
+	}
+}
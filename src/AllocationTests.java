@@ -0,0 +1,116 @@
+import static org.junit.Assert.*;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import org.junit.Test;
+
+/**
+ * Allocation budgets for compressing and decompressing each testdata file,
+ * measured with the thread allocation counter and given in bytes allocated
+ * per MB of uncompressed data. Each stream runs once to warm up before it is
+ * measured. Each budget is the most measured on JDK 11, 17 and 21 (noted in
+ * each list) plus 3%, rounded up: runs vary by under 1.5%, so a change that
+ * allocates more on a hot path fails here. Measure again and lower a budget when a path
+ * stops allocating, so that it stays that way.
+ * @author Ridge Shrubsall (21112211)
+ */
+public class AllocationTests {
+	/**
+	 * The folder of test files.
+	 */
+	private static final File TESTDATA = new File("testdata");
+	
+	/**
+	 * The files and their budgets (in bytes per MB) for compressing and decompressing.
+	 */
+	private static final String[] FILES = {
+		"21-Compression.pdf", "acm.txt", "e.txt", "longruns.txt",
+		"pi.txt", "project_classes.tar", "project_java.tar", "tom_sawyer.txt"
+	};
+	private static final long[] COMPRESS_BUDGET = {
+		// Measured: 62005482, 59966708, 29086887, 1161679, 29050088, 57490173, 29635211, 36772634
+		63900000, 61800000, 30000000, 1200000, 30000000, 59300000, 30600000, 37900000
+	};
+	private static final long[] DECOMPRESS_BUDGET = {
+		// Measured: 10124179, 9725820, 4275471, 1197227, 4286111, 11813788, 5880782, 5170093
+		10500000, 10100000, 4410000, 1240000, 4420000, 12200000, 6060000, 5330000
+	};
+	
+	
+	/**
+	 * Test that compressing each file stays within its budget.
+	 */
+	@Test
+	public void testCompressAllocation() throws IOException {
+		checkBudgets(true, COMPRESS_BUDGET);
+	}
+	
+	/**
+	 * Test that decompressing each file stays within its budget.
+	 */
+	@Test
+	public void testDecompressAllocation() throws IOException {
+		checkBudgets(false, DECOMPRESS_BUDGET);
+	}
+	
+	/**
+	 * Measure each file and check it against its budget, reporting every file over budget at once.
+	 * @param compress True to measure compression, false for decompression
+	 * @param budget The budget for each file (in bytes per MB)
+	 */
+	private void checkBudgets(boolean compress, long[] budget) throws IOException {
+		StringBuilder failures = new StringBuilder();
+		for (int i = 0; i < FILES.length; i++) {
+			byte[] data = Files.readAllBytes(new File(TESTDATA, FILES[i]).toPath());
+			byte[] input = compress ? data : deflate(data);
+			run(compress, input);                                    // Warm up
+			long startBytes = allocatedBytes();
+			run(compress, input);
+			long perMB = (allocatedBytes() - startBytes) * 1000000 / data.length;
+			System.out.println(String.format("%-22s %-10s %,14d bytes/MB (budget %,d)",
+					FILES[i], compress ? "compress" : "decompress", perMB, budget[i]));
+			if (perMB > budget[i]) {
+				failures.append(String.format("%n%s: %,d bytes/MB over a budget of %,d", FILES[i], perMB, budget[i]));
+			}
+		}
+		if (failures.length() > 0) {
+			fail("Allocation over budget:" + failures);
+		}
+	}
+	
+	/**
+	 * Compress or decompress a stream, discarding the output.
+	 * @param compress True to compress, false to decompress
+	 * @param input The input data
+	 */
+	private static void run(boolean compress, byte[] input) throws IOException {
+		BitInputStream in = new BitInputStream(new ByteArrayInputStream(input));
+		BitOutputStream out = new BitOutputStream(OutputStream.nullOutputStream());
+		if (compress) {
+			new Deflater(null, in, out).process();
+		} else {
+			new Inflater(null, in, out).process();
+		}
+	}
+	
+	/**
+	 * Compress data to a raw DEFLATE stream.
+	 * @param data The data
+	 * @return The compressed data
+	 */
+	private static byte[] deflate(byte[] data) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new Deflater(null, new BitInputStream(new ByteArrayInputStream(data)), new BitOutputStream(out)).process();
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Get the number of bytes allocated by the current thread so far.
+	 * @return The byte count
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assertTrue("Allocation counter not supported", bean instanceof com.sun.management.ThreadMXBean);
+		return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
@@ -0,0 +1,298 @@
+import java.io.*;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Compresses many independent inputs at once, each to its own zlib stream.
+ * Every input is compressed on its own virtual thread when the JVM has them
+ * (Java 21 or later), otherwise on a pool of one thread per permit. Either
+ * way, at most a fixed number of inputs (by default one per processor) are
+ * compressed at a time, and the deflaters are taken from a codec pool, so a
+ * batch costs little more than its inputs and outputs. With virtual threads,
+ * the permit is taken inside each input's thread, so every input waiting
+ * for its turn holds a parked virtual thread (a small heap-allocated stack)
+ * until it runs.
+ * @author Ridge Shrubsall (21112211)
+ */
+public class BatchCompressor implements AutoCloseable {
+	/**
+	 * The compressed bytes and statistics for one input.
+	 */
+	public static class Result {
+		/**
+		 * The zlib stream.
+		 */
+		private byte[] bytes;
+		
+		/**
+		 * The statistics for the stream.
+		 */
+		private CompressionStats stats;
+		
+		/**
+		 * Create a new result.
+		 * @param bytes The zlib stream
+		 * @param stats The statistics for the stream
+		 */
+		Result(byte[] bytes, CompressionStats stats) {
+			this.bytes = bytes;
+			this.stats = stats;
+		}
+		
+		/**
+		 * Get the compressed data.
+		 * @return The zlib stream
+		 */
+		public byte[] getBytes() {
+			return bytes;
+		}
+		
+		/**
+		 * Get the statistics for the stream.
+		 * @return The statistics
+		 */
+		public CompressionStats getStats() {
+			return stats;
+		}
+	}
+	
+	
+	/**
+	 * The executor that runs each input (or null once closed).
+	 */
+	private volatile ExecutorService executor;
+	
+	/**
+	 * Whether the executor starts a virtual thread per input.
+	 */
+	private boolean virtual;
+	
+	/**
+	 * The most inputs compressed at a time, and the permits for them.
+	 */
+	private int concurrency;
+	private Semaphore permits;
+	
+	/**
+	 * The deflater options.
+	 */
+	private DeflaterOptions options;
+	
+	/**
+	 * The pool that deflaters are taken from.
+	 */
+	private CodecPool pool;
+	
+	/**
+	 * Create a new BatchCompressor that compresses one input per processor at a time.
+	 */
+	public BatchCompressor() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Create a new BatchCompressor.
+	 * @param concurrency The most inputs to compress at a time
+	 */
+	public BatchCompressor(int concurrency) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("Invalid concurrency: " + concurrency);
+		}
+		this.concurrency = concurrency;
+		permits = new Semaphore(concurrency);
+		executor = newVirtualThreadExecutor();
+		virtual = (executor != null);
+		if (!virtual) {
+			executor = Executors.newFixedThreadPool(concurrency, r -> {
+				Thread t = new Thread(r, "BatchCompressor");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		options = DeflaterOptions.DEFAULT;
+		pool = CodecPool.getDefault();
+	}
+	
+	/**
+	 * Create an executor that starts a virtual thread for each task, if the
+	 * JVM has them. This class is compiled for Java 11, so the method is
+	 * looked up by name.
+	 * @return The executor (or null if virtual threads aren't available)
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) m.invoke(null);
+		} catch (ReflectiveOperationException | LinkageError e) {
+			// Before Java 21 (or a preview feature that isn't enabled): use platform threads
+			return null;
+		}
+	}
+	
+	/**
+	 * Set the deflater options for the inputs submitted from now on.
+	 * @param options The options
+	 */
+	public void setOptions(DeflaterOptions options) {
+		this.options = options;
+	}
+	
+	/**
+	 * Set the pool that deflaters are taken from, for the inputs submitted from now on.
+	 * @param pool The pool
+	 */
+	public void setCodecPool(CodecPool pool) {
+		this.pool = pool;
+	}
+	
+	/**
+	 * Check whether each input runs on a virtual thread.
+	 * @return True for virtual threads, false for a thread pool
+	 */
+	public boolean isVirtual() {
+		return virtual;
+	}
+	
+	/**
+	 * Get the most inputs compressed at a time.
+	 * @return The concurrency limit
+	 */
+	public int getConcurrency() {
+		return concurrency;
+	}
+	
+	/**
+	 * Compress a byte array. The array must not change until the result is done.
+	 * @param data The data
+	 * @return The result, when done
+	 * @throws IllegalStateException If the compressor has been closed
+	 */
+	public CompletableFuture<Result> compress(byte[] data) {
+		return submit(() -> data);
+	}
+	
+	/**
+	 * Compress the remaining bytes of a buffer. The buffer's position is
+	 * left unchanged, and its contents must not change until the result is done.
+	 * @param buffer The buffer
+	 * @return The result, when done
+	 * @throws IllegalStateException If the compressor has been closed
+	 */
+	public CompletableFuture<Result> compress(ByteBuffer buffer) {
+		ByteBuffer b = buffer.duplicate();
+		return submit(() -> {
+			byte[] data = new byte[b.remaining()];
+			b.get(data);
+			return data;
+		});
+	}
+	
+	/**
+	 * Compress a file. The file is read when its turn comes, and if it
+	 * can't be read, the result fails with the IOException.
+	 * @param path The file
+	 * @return The result, when done
+	 * @throws IllegalStateException If the compressor has been closed
+	 */
+	public CompletableFuture<Result> compress(Path path) {
+		return submit(() -> Files.readAllBytes(path));
+	}
+	
+	/**
+	 * Compress each input of a batch.
+	 * @param inputs The inputs (each a byte array, ByteBuffer or Path)
+	 * @return The results, when done (in the same order as the inputs)
+	 * @throws IllegalStateException If the compressor has been closed
+	 */
+	public List<CompletableFuture<Result>> compressAll(Collection<?> inputs) {
+		for (Object input : inputs) {
+			if (!(input instanceof byte[] || input instanceof ByteBuffer || input instanceof Path)) {
+				throw new IllegalArgumentException("Unsupported input: " + ((input == null) ? "null" : input.getClass().getName()));
+			}
+		}
+		List<CompletableFuture<Result>> results = new ArrayList<CompletableFuture<Result>>(inputs.size());
+		for (Object input : inputs) {
+			if (input instanceof byte[]) {
+				results.add(compress((byte[]) input));
+			} else if (input instanceof ByteBuffer) {
+				results.add(compress((ByteBuffer) input));
+			} else {
+				results.add(compress((Path) input));
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * Run an input on the executor, once a permit is free.
+	 * @param input Gets the data to compress
+	 * @return The result, when done
+	 * @throws IllegalStateException If the compressor has been closed
+	 */
+	private CompletableFuture<Result> submit(Callable<byte[]> input) {
+		ExecutorService executor = this.executor;
+		if (executor == null) {
+			throw new IllegalStateException("BatchCompressor is closed");
+		}
+		CompletableFuture<Result> result = new CompletableFuture<Result>();
+		DeflaterOptions options = this.options;
+		CodecPool pool = this.pool;
+		try {
+			executor.execute(() -> {
+				try {
+					permits.acquire();
+					try {
+						result.complete(compress(input.call(), options, pool));
+					} finally {
+						permits.release();
+					}
+				} catch (Throwable e) {
+					result.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// Closed since the check above
+			throw new IllegalStateException("BatchCompressor is closed");
+		}
+		return result;
+	}
+	
+	/**
+	 * Compress data to a zlib stream.
+	 * @param data The data
+	 * @param options The deflater options
+	 * @param pool The pool that the deflater is taken from
+	 * @return The result
+	 * @throws IOException If the stream can't be written
+	 */
+	private static Result compress(byte[] data, DeflaterOptions options, CodecPool pool) throws IOException {
+		ZLibCompressor zlib = new ZLibCompressor();
+		zlib.setOptions(options);
+		zlib.setCodecPool(pool);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+		CompressionStats stats = zlib.compressStream(new ByteArrayInputStream(data), out);
+		return new Result(out.toByteArray(), stats);
+	}
+	
+	/**
+	 * Stop taking inputs, and wait for the ones submitted to finish.
+	 */
+	public synchronized void close() {
+		ExecutorService executor = this.executor;
+		if (executor == null) return;
+		executor.shutdown();
+		try {
+			while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+				// Keep waiting for the last inputs
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		this.executor = null;
+	}
+}
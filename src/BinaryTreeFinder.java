@@ -0,0 +1,162 @@
+/**
+ * Finds matches through binary trees (as in LZMA's BT3 match finder). The
+ * positions with the same hash of their first three bytes form a tree,
+ * sorted by the strings that start at them, with the newest at the root.
+ * A search walks down from the root and reinserts the current position as
+ * the new root, so each step narrows the search and matches get longer as
+ * they get further away. This avoids hash chains that fill with useless
+ * candidates on repetitive data.
+ * @author Ridge Shrubsall (21112211)
+ */
+public class BinaryTreeFinder extends HistoryFinder {
+	/**
+	 * The number of bits in the hash.
+	 */
+	private static final int HASH_BITS = 15;
+	
+	/**
+	 * The most nodes visited by a search.
+	 */
+	private static final int MAX_DEPTH = 256;
+	
+	
+	/**
+	 * The root of the tree for each hash (or -1 if none).
+	 */
+	private IntTable head;
+	
+	/**
+	 * The left and right children of each position (the smaller and
+	 * larger strings), at indices 2 * p and 2 * p + 1.
+	 */
+	private IntTable son;
+	
+	/**
+	 * The arrays behind the tables when they are on the heap (or null if off-heap).
+	 */
+	private int[] headArray;
+	private int[] sonArray;
+	
+	/**
+	 * Create a new finder, with its tables on the heap.
+	 * @param s The window size (a power of 2)
+	 */
+	public BinaryTreeFinder(int s) {
+		this(s, new TableAllocator());
+	}
+	
+	/**
+	 * Create a new finder.
+	 * @param s The window size (a power of 2)
+	 * @param tables The allocator for the finder's tables
+	 */
+	public BinaryTreeFinder(int s, TableAllocator tables) {
+		super(s);
+		head = tables.allocate(1 << HASH_BITS, -1);
+		son = tables.allocate(4 * s, -1);
+		headArray = TableAllocator.arrayOf(head);
+		sonArray = TableAllocator.arrayOf(son);
+	}
+	
+	/**
+	 * Index a position, finding its matches if requested.
+	 * @param pos The position
+	 * @param dists The array to store the distances in (or null)
+	 * @param lens The array to store the lengths in (or null)
+	 * @return The number of matches found
+	 */
+	protected int insert(int pos, int[] dists, int[] lens) {
+		int h = hash(pos, HASH_BITS);
+		int cur;
+		if (headArray != null) {
+			cur = headArray[h];
+			headArray[h] = pos;
+		} else {
+			cur = head.get(h);
+			head.set(h, pos);
+		}
+		
+		// Walk down the tree, splitting it around the new root
+		int limit = Math.min(MAX_MATCH, available(pos));
+		int oldest = Math.max(0, oldest());
+		int ptrLeft = 2 * (pos & mask);                             // Where to link the next smaller/larger node
+		int ptrRight = ptrLeft + 1;
+		int lenLeft = 0;                                            // Common prefix with the smaller/larger side
+		int lenRight = 0;
+		int n = 0;
+		int longest = MIN_MATCH - 1;
+		for (int depth = 0; ; depth++) {
+			if (cur < oldest || depth == MAX_DEPTH) {
+				setSon(ptrLeft, -1);
+				setSon(ptrRight, -1);
+				break;
+			}
+			int node = 2 * (cur & mask);
+			int len = Math.min(lenLeft, lenRight);                  // Both sides share this prefix
+			len = matchLength(cur, pos, len, limit);
+			if (len > longest) {
+				if (dists != null) {
+					dists[n] = pos - cur;
+					lens[n] = len;
+					n++;
+				}
+				longest = len;
+			}
+			if (len == limit) {                                     // Replace the node with the new root
+				setSon(ptrLeft, getSon(node));
+				setSon(ptrRight, getSon(node + 1));
+				break;
+			}
+			if (byteAt(cur + len) < byteAt(pos + len)) {
+				setSon(ptrLeft, cur);                               // Smaller: go right for larger strings
+				ptrLeft = node + 1;
+				cur = getSon(ptrLeft);
+				lenLeft = len;
+			} else {
+				setSon(ptrRight, cur);                              // Larger: go left for smaller strings
+				ptrRight = node;
+				cur = getSon(ptrRight);
+				lenRight = len;
+			}
+		}
+		return n;
+	}
+	
+	/**
+	 * Get a child link.
+	 * @param i The index
+	 * @return The child position (or -1 if none)
+	 */
+	private int getSon(int i) {
+		return (sonArray != null) ? sonArray[i] : son.get(i);
+	}
+	
+	/**
+	 * Set a child link.
+	 * @param i The index
+	 * @param value The child position (or -1 for none)
+	 */
+	private void setSon(int i, int value) {
+		if (sonArray != null) {
+			sonArray[i] = value;
+		} else {
+			son.set(i, value);
+		}
+	}
+	
+	/**
+	 * Subtract the given amount from every stored position,
+	 * dropping positions that would become negative.
+	 * @param shift The amount to subtract
+	 */
+	protected void rebase(int shift) {
+		for (int i = 0; i < head.size(); i++) {
+			int p = head.get(i);
+			head.set(i, (p < shift) ? -1 : p - shift);
+		}
+		for (int i = 0; i < son.size(); i++) {
+			int p = son.get(i);
+			son.set(i, (p < shift) ? -1 : p - shift);
+		}
+	}
+}
@@ -32,6 +32,14 @@ public class BitInputStream {
 		return count;
 	}
 	
+	/**
+	 * Return the number of bits read (not counting those still queued).
+	 * @return The bit count
+	 */
+	public long getBitCount() {
+		return count * 8 - ((8 - bitPos) & 7);
+	}
+	
 	/**
 	 * Read an array of bytes.
 	 * @param b The byte array
@@ -32,6 +32,14 @@ public class BitOutputStream {
 		return count;
 	}
 	
+	/**
+	 * Return the number of bits written (including those still queued).
+	 * @return The bit count
+	 */
+	public long getBitCount() {
+		return count * 8 + bitPos;
+	}
+	
 	/**
 	 * Write an array of bytes.
 	 * @param b The byte array
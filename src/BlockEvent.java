@@ -0,0 +1,47 @@
+import jdk.jfr.*;
+
+/**
+ * A flight recorder event for each block written by the deflater or read
+ * by the inflater. The event starts when the block's first symbol is
+ * reached (when the block before it ends) and ends once it is written or
+ * read. It is only filled in and committed while a recording has it enabled.
+ * @author Ridge Shrubsall (21112211)
+ */
+@Name("deflate.Block")
+@Label("DEFLATE Block")
+@Category("DEFLATE")
+@Description("A block compressed or decompressed")
+@StackTrace(false)
+public class BlockEvent extends Event {
+	/**
+	 * Whether the block was compressed or decompressed.
+	 */
+	@Label("Operation")
+	String operation;
+	
+	/**
+	 * The block type (0 = stored, 1 = fixed, 2 = dynamic).
+	 */
+	@Label("Block Type")
+	int type;
+	
+	/**
+	 * The size of the data in the block.
+	 */
+	@Label("Raw Size")
+	@DataAmount(DataAmount.BYTES)
+	long rawSize;
+	
+	/**
+	 * The size of the block in the stream.
+	 */
+	@Label("Compressed Size")
+	@DataAmount(DataAmount.BITS)
+	long compressedSize;
+	
+	/**
+	 * The number of literals and matches (0 for stored blocks).
+	 */
+	@Label("Symbols")
+	int symbols;
+}
@@ -2,7 +2,7 @@
  * Implements a 32-bit cyclic redundancy checker.
  * @author Ridge Shrubsall (21112211)
  */
-public class CRC32 {
+public class CRC32 implements Checksum {
 	/**
 	 * A precomputed CRC table of all 8-bit messages.
 	 */
@@ -42,6 +42,13 @@ public class CRC32 {
 		return ~crc;
 	}
 	
+	/**
+	 * Reset the checksum to its initial value.
+	 */
+	public void reset() {
+		crc = 0xffffffff;
+	}
+	
 	/**
 	 * Update the current checksum with the given byte.
 	 * @param b The byte
@@ -0,0 +1,36 @@
+/**
+ * This interface describes a running checksum over a stream of data.
+ * @author Ridge Shrubsall (21112211)
+ */
+public interface Checksum {
+	/**
+	 * Return the current value of the checksum.
+	 * @return The current checksum value
+	 */
+	public abstract int getValue();
+	
+	/**
+	 * Update the current checksum with the given byte.
+	 * @param b The byte
+	 */
+	public abstract void update(byte b);
+	
+	/**
+	 * Update the current checksum with the given bytes.
+	 * @param b The byte array
+	 */
+	public abstract void update(byte[] b);
+	
+	/**
+	 * Update the current checksum with the given bytes.
+	 * @param b The byte array
+	 * @param off The starting offset
+	 * @param len The number of bytes
+	 */
+	public abstract void update(byte[] b, int off, int len);
+	
+	/**
+	 * Reset the checksum to its initial value.
+	 */
+	public abstract void reset();
+}
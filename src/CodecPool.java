@@ -0,0 +1,200 @@
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * A thread-safe pool of idle deflaters and inflaters, so that a server
+ * compressing many small streams reuses their buffers and tables instead
+ * of allocating them for every stream. Each codec is reset when it is
+ * taken from the pool, and should be given back once its stream has been
+ * processed (and its statistics read). A codec that isn't given back is
+ * simply left to the garbage collector.
+ * @author Ridge Shrubsall (21112211)
+ */
+public class CodecPool {
+	/**
+	 * The pool shared by the compressors by default.
+	 */
+	private static final CodecPool DEFAULT = new CodecPool(4 * Runtime.getRuntime().availableProcessors());
+	
+	
+	/**
+	 * The most idle codecs of each kind kept.
+	 */
+	private int maxIdle;
+	
+	/**
+	 * The idle deflaters and inflaters (most recently used first).
+	 */
+	private ArrayDeque<Deflater> deflaters;
+	private ArrayDeque<Inflater> inflaters;
+	
+	/**
+	 * Create a new, empty pool.
+	 * @param maxIdle The most idle codecs of each kind to keep
+	 */
+	public CodecPool(int maxIdle) {
+		if (maxIdle < 0) {
+			throw new IllegalArgumentException("Invalid pool size: " + maxIdle);
+		}
+		this.maxIdle = maxIdle;
+		deflaters = new ArrayDeque<Deflater>();
+		inflaters = new ArrayDeque<Inflater>();
+	}
+	
+	/**
+	 * Get the pool shared by the compressors by default, which keeps up
+	 * to four idle codecs of each kind per processor.
+	 * @return The default pool
+	 */
+	public static CodecPool getDefault() {
+		return DEFAULT;
+	}
+	
+	/**
+	 * Take a deflater with the given strategy and match finder, and the
+	 * default options, from the pool (or create one if none is idle),
+	 * reset for a new stream.
+	 * @param progress The progress meter (or null if none)
+	 * @param in The input stream
+	 * @param out The output stream
+	 * @param strategy The compression strategy (one of the Deflater.S_ constants)
+	 * @param finder The match finder (one of the Deflater.F_ constants)
+	 * @return The deflater
+	 */
+	public Deflater takeDeflater(ProgressMeter progress, BitInputStream in, BitOutputStream out, int strategy, int finder) {
+		return takeDeflater(progress, in, out, strategy, finder, DeflaterOptions.DEFAULT);
+	}
+	
+	/**
+	 * Take a deflater with the given strategy, match finder and options from
+	 * the pool (or create one if none is idle), reset for a new stream. Any
+	 * idle deflater with the same buffer and window sizes is used, and the
+	 * rest of the options (the mode, LZ77 and debug logging) are applied to it.
+	 * @param progress The progress meter (or null if none)
+	 * @param in The input stream
+	 * @param out The output stream
+	 * @param strategy The compression strategy (one of the Deflater.S_ constants)
+	 * @param finder The match finder (one of the Deflater.F_ constants)
+	 * @param options The deflater options
+	 * @return The deflater
+	 */
+	public Deflater takeDeflater(ProgressMeter progress, BitInputStream in, BitOutputStream out, int strategy, int finder, DeflaterOptions options) {
+		Deflater deflater = null;
+		synchronized (this) {
+			Iterator<Deflater> it = deflaters.iterator();
+			while (it.hasNext()) {
+				Deflater d = it.next();
+				if (d.getStrategy() == strategy && d.getMatchFinderType() == finder && d.getOptions().hasSameSizes(options)) {
+					it.remove();
+					deflater = d;
+					break;
+				}
+			}
+		}
+		if (deflater == null) {
+			deflater = new Deflater(progress, in, out, strategy, options);
+			if (finder != Deflater.F_LINEAR) {
+				deflater.setMatchFinder(finder);
+			}
+		} else {
+			deflater.reset(progress, in, out);
+			deflater.setOptions(options);
+		}
+		return deflater;
+	}
+	
+	/**
+	 * Give a deflater back to the pool once its stream has been processed.
+	 * Its match finder's tables must be on the heap (tables from an
+	 * allocator that has been closed can't be reused).
+	 * @param deflater The deflater
+	 * @throws IllegalArgumentException If the deflater has off-heap tables or is already in the pool
+	 */
+	public void giveBack(Deflater deflater) {
+		if (deflater.hasOffHeapTables()) {
+			throw new IllegalArgumentException("Deflater has off-heap tables");
+		}
+		synchronized (this) {
+			if (contains(deflaters, deflater)) {
+				throw new IllegalArgumentException("Deflater is already in the pool");
+			}
+			if (deflaters.size() == maxIdle) {
+				deflaters.pollLast();                                // Drop the least recently used
+			}
+			if (maxIdle > 0) {
+				deflaters.addFirst(deflater);
+			}
+		}
+	}
+	
+	/**
+	 * Take an inflater from the pool (or create one if none is idle),
+	 * reset for a new stream.
+	 * @param progress The progress meter (or null if none)
+	 * @param in The input stream
+	 * @param out The output stream
+	 * @return The inflater
+	 */
+	public Inflater takeInflater(ProgressMeter progress, BitInputStream in, BitOutputStream out) {
+		Inflater inflater;
+		synchronized (this) {
+			inflater = inflaters.pollFirst();
+		}
+		if (inflater == null) {
+			return new Inflater(progress, in, out);
+		}
+		inflater.reset(progress, in, out);
+		return inflater;
+	}
+	
+	/**
+	 * Give an inflater back to the pool once its stream has been processed.
+	 * @param inflater The inflater
+	 * @throws IllegalArgumentException If the inflater is already in the pool
+	 */
+	public void giveBack(Inflater inflater) {
+		synchronized (this) {
+			if (contains(inflaters, inflater)) {
+				throw new IllegalArgumentException("Inflater is already in the pool");
+			}
+			if (inflaters.size() == maxIdle) {
+				inflaters.pollLast();                                // Drop the least recently used
+			}
+			if (maxIdle > 0) {
+				inflaters.addFirst(inflater);
+			}
+		}
+	}
+	
+	/**
+	 * Check whether a codec is idle in the pool (comparing identities, so
+	 * that a codec given back twice isn't handed out to two streams).
+	 * @param codecs The idle codecs
+	 * @param codec The codec
+	 * @return True if the codec is idle
+	 */
+	private static boolean contains(ArrayDeque<?> codecs, Object codec) {
+		for (Object c : codecs) {
+			if (c == codec) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Get the number of idle deflaters in the pool.
+	 * @return The deflater count
+	 */
+	public synchronized int getIdleDeflaters() {
+		return deflaters.size();
+	}
+	
+	/**
+	 * Get the number of idle inflaters in the pool.
+	 * @return The inflater count
+	 */
+	public synchronized int getIdleInflaters() {
+		return inflaters.size();
+	}
+}
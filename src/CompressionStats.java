@@ -0,0 +1,371 @@
+import java.text.NumberFormat;
+import java.util.Arrays;
+
+/**
+ * Statistics for one compressed or decompressed stream: the time spent in
+ * each phase, the type and size of each block, the literals and matches,
+ * the match finder's searches and the size of the dynamic block headers. Phases are timed when the work
+ * switches between them (per buffer refill, block or segment), never per
+ * symbol, so the statistics are cheap enough to always collect.
+ * @author Ridge Shrubsall (21112211)
+ */
+public class CompressionStats {
+	/*
+	 * Timed phases
+	 */
+	public static final int T_INPUT    = 0;                      // Reading the input
+	public static final int T_CHECKSUM = 1;                      // Updating the checksum
+	public static final int T_MATCH    = 2;                      // Probing and finding matches
+	public static final int T_HUFFMAN  = 3;                      // Building (or reading) codes
+	public static final int T_OUTPUT   = 4;                      // Writing blocks
+	public static final int T_DECODE   = 5;                      // Decoding blocks (with output)
+	private static final String[] PHASE_NAMES = {
+		"input", "checksum", "match finding", "Huffman codes", "output", "decoding"
+	};
+	
+	
+	/**
+	 * The time spent in each phase (in ns).
+	 */
+	private long[] phaseNanos;
+	
+	/**
+	 * The current phase (or -1 if none) and when it started.
+	 */
+	private int phase;
+	private long phaseStart;
+	
+	/**
+	 * The number of blocks of each type (0 = stored, 1 = fixed, 2 = dynamic).
+	 */
+	private int[] blockTypes;
+	
+	/**
+	 * The type and size (in bytes of data) of each block, in order.
+	 */
+	private int[] blockList;
+	private long[] blockSizes;
+	
+	/**
+	 * The number of literals and matches, and the total length and distance of the matches.
+	 */
+	private long numLiterals;
+	private long numMatches;
+	private long matchLengths;
+	private long matchDistances;
+	
+	/**
+	 * The number of match searches, the number of matches found at a recent
+	 * distance, and the number of those that ended the search early.
+	 */
+	private long numSearches;
+	private long numRecentHits;
+	private long numRecentEarly;
+	
+	/**
+	 * The total size of the dynamic block headers (in bits).
+	 */
+	private long headerBits;
+	
+	/**
+	 * The sizes of the input and output.
+	 */
+	private long bytesIn;
+	private long bytesOut;
+	
+	/**
+	 * The compressor's messages.
+	 */
+	private String log;
+	
+	/**
+	 * Create a new, empty set of statistics.
+	 */
+	public CompressionStats() {
+		phaseNanos = new long[PHASE_NAMES.length];
+		phase = -1;
+		blockTypes = new int[3];
+		blockList = new int[16];
+		blockSizes = new long[16];
+		log = "";
+	}
+	
+	/**
+	 * Switch to a new phase, charging the time since the last switch to the current one.
+	 * @param next The new phase (one of the T_ constants, or -1 for none)
+	 * @return The previous phase (to switch back to)
+	 */
+	int enter(int next) {
+		long now = System.nanoTime();
+		if (phase >= 0) {
+			phaseNanos[phase] += now - phaseStart;
+		}
+		int prev = phase;
+		phase = next;
+		phaseStart = now;
+		return prev;
+	}
+	
+	/**
+	 * Stop timing, charging the time since the last switch to the current phase.
+	 */
+	void stop() {
+		enter(-1);
+	}
+	
+	/**
+	 * Count a block.
+	 * @param type The block type
+	 * @param size The number of bytes of data in the block
+	 */
+	void addBlock(int type, long size) {
+		int n = getBlockCount();
+		if (n == blockList.length) {
+			blockList = Arrays.copyOf(blockList, 2 * n);
+			blockSizes = Arrays.copyOf(blockSizes, 2 * n);
+		}
+		blockList[n] = type;
+		blockSizes[n] = size;
+		blockTypes[type]++;
+	}
+	
+	/**
+	 * Count a literal.
+	 */
+	void addLiteral() {
+		numLiterals++;
+	}
+	
+	/**
+	 * Count a match.
+	 * @param len The match length
+	 * @param dist The match distance
+	 */
+	void addMatch(int len, int dist) {
+		numMatches++;
+		matchLengths += len;
+		matchDistances += dist;
+	}
+	
+	/**
+	 * Set the match finder's search counts.
+	 * @param searches The number of searches
+	 * @param recentHits The number of matches found at a recent distance
+	 * @param recentEarly The number of those that ended the search early
+	 */
+	void setSearches(long searches, long recentHits, long recentEarly) {
+		numSearches = searches;
+		numRecentHits = recentHits;
+		numRecentEarly = recentEarly;
+	}
+	
+	/**
+	 * Count the header of a dynamic block.
+	 * @param bits The header size (in bits)
+	 */
+	void addHeaderBits(int bits) {
+		headerBits += bits;
+	}
+	
+	/**
+	 * Set the sizes of the input and output.
+	 * @param in The input size
+	 * @param out The output size
+	 */
+	void setSizes(long in, long out) {
+		bytesIn = in;
+		bytesOut = out;
+	}
+	
+	/**
+	 * Set the compressor's messages.
+	 * @param log The messages
+	 */
+	void setLog(String log) {
+		this.log = log;
+	}
+	
+	/**
+	 * Get the time spent in a phase.
+	 * @param t The phase (one of the T_ constants)
+	 * @return The time (in ns)
+	 */
+	public long getPhaseNanos(int t) {
+		return phaseNanos[t];
+	}
+	
+	/**
+	 * Get the total time spent in all phases.
+	 * @return The time (in ns)
+	 */
+	public long getTotalNanos() {
+		long total = 0;
+		for (long n : phaseNanos) {
+			total += n;
+		}
+		return total;
+	}
+	
+	/**
+	 * Get the number of blocks.
+	 * @return The block count
+	 */
+	public int getBlockCount() {
+		return blockTypes[0] + blockTypes[1] + blockTypes[2];
+	}
+	
+	/**
+	 * Get the number of blocks of the given type.
+	 * @param type The block type (0 = stored, 1 = fixed, 2 = dynamic)
+	 * @return The block count
+	 */
+	public int getBlockCount(int type) {
+		return blockTypes[type];
+	}
+	
+	/**
+	 * Get the type of a block.
+	 * @param i The block number (from 0)
+	 * @return The block type (0 = stored, 1 = fixed, 2 = dynamic)
+	 */
+	public int getBlockType(int i) {
+		if (i < 0 || i >= getBlockCount()) {
+			throw new IndexOutOfBoundsException("Invalid block: " + i);
+		}
+		return blockList[i];
+	}
+	
+	/**
+	 * Get the size of a block.
+	 * @param i The block number (from 0)
+	 * @return The number of bytes of data in the block
+	 */
+	public long getBlockSize(int i) {
+		if (i < 0 || i >= getBlockCount()) {
+			throw new IndexOutOfBoundsException("Invalid block: " + i);
+		}
+		return blockSizes[i];
+	}
+	
+	/**
+	 * Get the number of literals.
+	 * @return The literal count
+	 */
+	public long getLiteralCount() {
+		return numLiterals;
+	}
+	
+	/**
+	 * Get the number of matches.
+	 * @return The match count
+	 */
+	public long getMatchCount() {
+		return numMatches;
+	}
+	
+	/**
+	 * Get the average match length.
+	 * @return The average length (or 0 if there are no matches)
+	 */
+	public double getAverageMatchLength() {
+		return (numMatches > 0) ? (double) matchLengths / numMatches : 0;
+	}
+	
+	/**
+	 * Get the average match distance.
+	 * @return The average distance (or 0 if there are no matches)
+	 */
+	public double getAverageMatchDistance() {
+		return (numMatches > 0) ? (double) matchDistances / numMatches : 0;
+	}
+	
+	/**
+	 * Get the number of match searches.
+	 * @return The search count
+	 */
+	public long getSearchCount() {
+		return numSearches;
+	}
+	
+	/**
+	 * Get the number of matches taken from a recent match distance.
+	 * @return The hit count
+	 */
+	public long getRecentHits() {
+		return numRecentHits;
+	}
+	
+	/**
+	 * Get the number of searches ended early by a long match
+	 * at a recent distance.
+	 * @return The early hit count
+	 */
+	public long getRecentEarlyHits() {
+		return numRecentEarly;
+	}
+	
+	/**
+	 * Get the total size of the dynamic block headers.
+	 * @return The header size (in bits)
+	 */
+	public long getHeaderBits() {
+		return headerBits;
+	}
+	
+	/**
+	 * Get the size of the input.
+	 * @return The byte count
+	 */
+	public long getBytesIn() {
+		return bytesIn;
+	}
+	
+	/**
+	 * Get the size of the output.
+	 * @return The byte count
+	 */
+	public long getBytesOut() {
+		return bytesOut;
+	}
+	
+	/**
+	 * Get the compressor's messages.
+	 * @return The messages (one per line)
+	 */
+	public String getLog() {
+		return log;
+	}
+	
+	/**
+	 * Get a report of the statistics to be logged, after the compressor's messages.
+	 * @return The report
+	 */
+	public String toString() {
+		NumberFormat fmt = NumberFormat.getNumberInstance();
+		StringBuilder sb = new StringBuilder(log);
+		if (sb.length() > 0) {
+			sb.append(String.format("%n"));
+		}
+		sb.append(String.format("%d blocks (%d stored, %d fixed, %d dynamic)",
+				getBlockCount(), blockTypes[0], blockTypes[1], blockTypes[2]));
+		if (blockTypes[2] > 0) {
+			sb.append(String.format("%nBlock headers took %s bits (%s bits per dynamic block)",
+					fmt.format(headerBits), fmt.format(headerBits / blockTypes[2])));
+		}
+		sb.append(String.format("%n%s literals, %s matches (average length %.1f, distance %.1f)",
+				fmt.format(numLiterals), fmt.format(numMatches), getAverageMatchLength(), getAverageMatchDistance()));
+		if (numRecentHits > 0) {
+			sb.append(String.format("%nRecent distances matched %s of %s searches (%.1f%%), %s ending the search early",
+					fmt.format(numRecentHits), fmt.format(numSearches),
+					100.0 * numRecentHits / numSearches, fmt.format(numRecentEarly)));
+		}
+		long total = getTotalNanos();
+		for (int t = 0; t < PHASE_NAMES.length; t++) {
+			if (phaseNanos[t] > 0) {
+				sb.append(String.format("%n%-14s %9.3f ms (%.1f%%)", PHASE_NAMES[t] + ":",
+						phaseNanos[t] / 1e6, 100.0 * phaseNanos[t] / total));
+			}
+		}
+		return sb.toString();
+	}
+}
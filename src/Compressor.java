@@ -12,9 +12,9 @@ public interface Compressor {
 	 * the compressed data to the specified output stream.
 	 * @param in The input stream for the data
 	 * @param out The output stream for writing the compressed data
-	 * @return A string reporting information to be logged
+	 * @return The statistics for the stream (with the information to be logged)
 	 */
-	public abstract String compress(InputStream in, OutputStream out);
+	public abstract CompressionStats compress(InputStream in, OutputStream out);
 	
 	/**
 	 * Reads a series of bytes from a compressed stream and
@@ -22,7 +22,7 @@ public interface Compressor {
 	 * the decompressed data to the specified output stream.
 	 * @param in The input stream for the compressed data
 	 * @param out The output stream for writing the decompressed data
-	 * @return A string reporting information to be logged
+	 * @return The statistics for the stream (with the information to be logged)
 	 */
-	public abstract String decompress(InputStream in, OutputStream out);
+	public abstract CompressionStats decompress(InputStream in, OutputStream out);
 }
@@ -0,0 +1,389 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Runs every file in a corpus folder, and synthetic text of growing size,
+ * through GZCompressor at every strategy and match finder, and through
+ * java.util.zip at levels 1, 6 and 9. Each run reports the compressed size,
+ * the compression and decompression speeds and the peak heap use, as CSV
+ * (or JSON) so that the results can be compared between releases.
+ * @author Ridge Shrubsall (21112211)
+ */
+public class CorpusBenchmark {
+	/**
+	 * The strategy names (in order of the Deflater.S_ constants).
+	 */
+	private static final String[] STRATEGIES = {"default", "filtered", "huffman", "rle", "fixed", "optimal"};
+	
+	/**
+	 * The match finder names (in order of the Deflater.F_ constants).
+	 */
+	private static final String[] FINDERS = {"linear", "chain", "tree"};
+	
+	/**
+	 * The java.util.zip compression levels to compare against.
+	 */
+	private static final int[] ZIP_LEVELS = {1, 6, 9};
+	
+	/**
+	 * The sizes of the synthetic inputs (in MiB), up to the chosen maximum.
+	 */
+	private static final int[] SYNTHETIC_SIZES = {1, 4, 16, 64, 256, 1024};
+	
+	/**
+	 * The words the synthetic text is made from.
+	 */
+	private static final String[] WORDS = (
+			"the of and to a in is that for it as was with be by on not he this are or his from at which " +
+			"but have an they you were her she there been one all we their has would when if so no will " +
+			"compress stream block window match length distance literal huffman code table tree buffer").split(" ");
+	
+	
+	/**
+	 * An input to the benchmark: a file, or synthetic text of a given size.
+	 */
+	private static class Input {
+		String name;
+		File file;
+		long size;
+		
+		/**
+		 * Open the input.
+		 * @return The input stream
+		 */
+		InputStream open() throws IOException {
+			if (file != null) {
+				return new BufferedInputStream(new FileInputStream(file));
+			}
+			return new SyntheticInputStream(size);
+		}
+	}
+	
+	/**
+	 * Generates text of random words and numbers (about 3:1 with gzip),
+	 * the same every time for the same size.
+	 */
+	private static class SyntheticInputStream extends InputStream {
+		private long remaining;
+		private java.util.Random random = new java.util.Random(1);
+		private byte[] line = new byte[0];
+		private int pos;
+		
+		SyntheticInputStream(long size) {
+			remaining = size;
+		}
+		
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return (read(b, 0, 1) == 1) ? (b[0] & 0xff) : -1;
+		}
+		
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining == 0) return -1;
+			int n = 0;
+			while (n < len && remaining > 0) {
+				if (pos == line.length) {
+					nextLine();
+				}
+				int c = (int) Math.min(Math.min(len - n, line.length - pos), remaining);
+				System.arraycopy(line, pos, b, off + n, c);
+				pos += c;
+				n += c;
+				remaining -= c;
+			}
+			return n;
+		}
+		
+		private void nextLine() {
+			StringBuilder sb = new StringBuilder();
+			int words = 4 + random.nextInt(12);
+			for (int i = 0; i < words; i++) {
+				if (random.nextInt(8) == 0) {
+					sb.append(random.nextInt(100000));
+				} else {
+					sb.append(WORDS[(int) (WORDS.length * Math.pow(random.nextDouble(), 2))]);
+				}
+				sb.append(i + 1 < words ? ' ' : '\n');
+			}
+			line = sb.toString().getBytes();
+			pos = 0;
+		}
+	}
+	
+	/**
+	 * Counts and discards the bytes written to it.
+	 */
+	private static class CountingOutputStream extends OutputStream {
+		long count;
+		
+		public void write(int b) {
+			count++;
+		}
+		
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+	
+	/**
+	 * The result of one run.
+	 */
+	private static class Result {
+		String input;
+		long size;
+		String codec;
+		String setting;
+		long compressed;
+		double compressSpeed;
+		double decompressSpeed;
+		long peakHeap;
+	}
+	
+	/**
+	 * Reset the peak usage of the heap memory pools.
+	 */
+	private static void resetPeakHeap() {
+		System.gc();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+	
+	/**
+	 * Get the peak heap use since the last reset (the sum of the
+	 * peaks of each pool, which may not have been at the same time).
+	 * @return The peak heap use (in bytes)
+	 */
+	private static long getPeakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+	
+	/**
+	 * Compress and decompress an input, checking that the data comes back
+	 * unchanged. The compressed data goes through a temporary file.
+	 * @param input The input
+	 * @param codec The codec ("deflate-impl" or "java.util.zip")
+	 * @param setting The strategy/finder pair, or the zip level
+	 * @param temp The temporary file
+	 * @return The result
+	 */
+	private static Result run(Input input, String codec, String setting, File temp) throws IOException {
+		Result result = new Result();
+		result.input = input.name;
+		result.size = input.size;
+		result.codec = codec;
+		result.setting = setting;
+		boolean zip = codec.equals("java.util.zip");
+		
+		// Compress the input, finding its checksum on the way
+		resetPeakHeap();
+		java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+		long startTime = System.nanoTime();
+		try (InputStream in = new java.util.zip.CheckedInputStream(input.open(), crc);
+				OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+			if (zip) {
+				final int level = Integer.parseInt(setting);
+				GZIPOutputStream gzip = new GZIPOutputStream(out, 65536) {
+					{
+						def.setLevel(level);
+					}
+				};
+				in.transferTo(gzip);
+				gzip.close();
+			} else {
+				String[] parts = setting.split("/");
+				GZCompressor gz = new GZCompressor(input.name, input.size, false);
+				gz.setStrategy(indexOf(STRATEGIES, parts[0]));
+				gz.setMatchFinder(indexOf(FINDERS, parts[1]));
+				gz.compress(in, out);
+			}
+		}
+		long midTime = System.nanoTime();
+		result.compressed = temp.length();
+		
+		// Decompress it again and check the result
+		java.util.zip.CRC32 check = new java.util.zip.CRC32();
+		CountingOutputStream counter = new CountingOutputStream();
+		long decompressStart = System.nanoTime();
+		try (InputStream in = new BufferedInputStream(new FileInputStream(temp));
+				OutputStream out = new CheckedOutputStream(counter, check)) {
+			if (zip) {
+				try (GZIPInputStream gzip = new GZIPInputStream(in, 65536)) {
+					gzip.transferTo(out);
+				}
+			} else {
+				new GZCompressor(input.name, result.compressed, false).decompress(in, out);
+			}
+		}
+		long endTime = System.nanoTime();
+		result.peakHeap = getPeakHeap();
+		if (counter.count != input.size || check.getValue() != crc.getValue()) {
+			throw new AssertionError(String.format("Round trip failed for %s (%s %s)", input.name, codec, setting));
+		}
+		
+		result.compressSpeed = input.size * 1000.0 / (midTime - startTime);
+		result.decompressSpeed = input.size * 1000.0 / (endTime - decompressStart);
+		return result;
+	}
+	
+	/**
+	 * Find a name in a list of names.
+	 * @param names The names
+	 * @param name The name to find
+	 * @return The index of the name
+	 */
+	private static int indexOf(String[] names, String name) {
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].equals(name)) return i;
+		}
+		throw new IllegalArgumentException("Unknown name: " + name);
+	}
+	
+	/**
+	 * Get every setting of GZCompressor. Huffman-only and RLE coding
+	 * don't use a match finder, so they only run with the linear one.
+	 * @return The strategy/finder pairs
+	 */
+	private static List<String> settings() {
+		List<String> settings = new ArrayList<String>();
+		for (int s = 0; s < STRATEGIES.length; s++) {
+			for (int f = 0; f < FINDERS.length; f++) {
+				if (f > 0 && (s == Deflater.S_HUFFMAN_ONLY || s == Deflater.S_RLE)) continue;
+				settings.add(STRATEGIES[s] + "/" + FINDERS[f]);
+			}
+		}
+		return settings;
+	}
+	
+	/**
+	 * Format a result as a CSV row or a JSON object.
+	 * @param r The result
+	 * @param json True for JSON
+	 * @return The formatted result
+	 */
+	private static String format(Result r, boolean json) {
+		if (json) {
+			return String.format(Locale.ROOT, "{\"input\": \"%s\", \"size\": %d, \"codec\": \"%s\", \"setting\": \"%s\", \"compressed\": %d, " +
+					"\"ratio\": %.4f, \"compress_mbs\": %.2f, \"decompress_mbs\": %.2f, \"peak_heap_mb\": %.1f}",
+					r.input, r.size, r.codec, r.setting, r.compressed, (double) r.compressed / r.size,
+					r.compressSpeed, r.decompressSpeed, r.peakHeap / 1048576.0);
+		}
+		return String.format(Locale.ROOT, "%s,%d,%s,%s,%d,%.4f,%.2f,%.2f,%.1f", r.input, r.size, r.codec, r.setting,
+				r.compressed, (double) r.compressed / r.size, r.compressSpeed, r.decompressSpeed, r.peakHeap / 1048576.0);
+	}
+	
+	/**
+	 * Main method to run the benchmark from command line.
+	 * Options are '-json' for JSON output, '-m' and the largest synthetic
+	 * input in MiB (0 for none), and '-s' and a pattern to choose settings,
+	 * followed by the corpus folder.
+	 * e.g. java CorpusBenchmark -m 16 -s "default/.*" testdata > results.csv
+	 * will compare the default strategy with each finder against java.util.zip
+	 * on each file in 'testdata' and on 1, 4 and 16 MiB of synthetic text.
+	 */
+	public static void main(String[] args) throws IOException {
+		// Parse arguments
+		boolean json = false;
+		int maxSize = 1024;
+		String pattern = ".*";
+		String dir = null;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-json")) {
+				json = true;
+			} else if (args[i].equals("-m") && i + 1 < args.length) {
+				maxSize = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-s") && i + 1 < args.length) {
+				pattern = args[++i];
+			} else if (dir == null && !args[i].startsWith("-")) {
+				dir = args[i];
+			} else {
+				dir = null;
+				break;
+			}
+		}
+		if (dir == null || !new File(dir).isDirectory()) {
+			System.out.println("Usage:");
+			System.out.println("\tjava CorpusBenchmark [-json] [-m max-size-mib] [-s setting-pattern] corpus-dir");
+			System.exit(1);
+		}
+		
+		// Find the inputs
+		List<Input> inputs = new ArrayList<Input>();
+		File[] files = new File(dir).listFiles();
+		java.util.Arrays.sort(files);
+		for (File file : files) {
+			if (file.isFile()) {
+				Input input = new Input();
+				input.name = file.getName();
+				input.file = file;
+				input.size = file.length();
+				inputs.add(input);
+			}
+		}
+		for (int size : SYNTHETIC_SIZES) {
+			if (size <= maxSize) {
+				Input input = new Input();
+				input.name = "synthetic-" + size + "M";
+				input.size = size * 1048576L;
+				inputs.add(input);
+			}
+		}
+		
+		// Run every setting on every input
+		List<String> settings = new ArrayList<String>();
+		for (String setting : settings()) {
+			if (setting.matches(pattern)) settings.add(setting);
+		}
+		File temp = File.createTempFile("corpus", ".gz");
+		temp.deleteOnExit();
+		PrintStream out = System.out;
+		if (json) {
+			out.println("[");
+		} else {
+			out.println("input,size,codec,setting,compressed,ratio,compress_mbs,decompress_mbs,peak_heap_mb");
+		}
+		for (String setting : settings) {                              // Warm up so the first rows aren't timed cold
+			run(inputs.get(0), "deflate-impl", setting, temp);
+		}
+		for (int level : ZIP_LEVELS) {
+			run(inputs.get(0), "java.util.zip", Integer.toString(level), temp);
+		}
+		boolean first = true;
+		for (Input input : inputs) {
+			List<Result> results = new ArrayList<Result>();
+			for (String setting : settings) {
+				results.add(run(input, "deflate-impl", setting, temp));
+			}
+			for (int level : ZIP_LEVELS) {
+				results.add(run(input, "java.util.zip", Integer.toString(level), temp));
+			}
+			for (Result r : results) {
+				out.print(json ? (first ? "  " : ",\n  ") : "");
+				out.print(format(r, json));
+				out.print(json ? "" : "\n");
+				first = false;
+			}
+			out.flush();
+		}
+		if (json) {
+			out.println("\n]");
+		}
+		temp.delete();
+	}
+}
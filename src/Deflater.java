@@ -7,21 +7,65 @@ import java.util.*;
  */
 public class Deflater {
 	/*
-	 * Debug logging
+	 * Compression modes (0 = none, 1 = fixed Huffman, 2 = dynamic Huffman,
+	 * 3 = cheapest of the three for each block)
 	 */
-	private static boolean DEBUG = false;
+	public static final int M_STORED   = 0;
+	public static final int M_FIXED    = 1;
+	public static final int M_DYNAMIC  = 2;
+	public static final int M_CHEAPEST = 3;
 	
 	/*
-	 * Compression mode (0 = none, 1 = fixed Huffman, 2 = dynamic Huffman)
+	 * Block limits (the number of symbols and bytes in a block, and the
+	 * number of symbols between checks for a block split)
 	 */
-	private static int MODE = 2;
-	private static boolean ENABLE_LZ77 = true;
+	private static final int MAX_SYMBOLS = 32768;
+	private static final int MAX_BLOCK_SIZE = 262144;
+	private static final int SEGMENT_SIZE = 2048;
 	
 	/*
-	 * Buffer and window sizes
+	 * Incompressible data detection (the policies for new data, the
+	 * smallest amount of data worth probing and the most refills
+	 * to skip before probing again)
 	 */
-	private static int BUFFER_SIZE = 32768;
-	private static int WINDOW_SIZE = 256;
+	private static final int P_NORMAL = 0;
+	private static final int P_HUFFMAN_ONLY = 1;
+	private static final int P_STORE = 2;
+	private static final int MIN_PROBE = 1024;
+	private static final int MAX_BACKOFF = 8;
+	
+	/*
+	 * Compression strategies
+	 */
+	public static final int S_DEFAULT      = 0;
+	public static final int S_FILTERED     = 1;
+	public static final int S_HUFFMAN_ONLY = 2;
+	public static final int S_RLE          = 3;
+	public static final int S_FIXED        = 4;
+	public static final int S_OPTIMAL      = 5;
+	
+	/*
+	 * Match finders
+	 */
+	public static final int F_LINEAR      = 0;
+	public static final int F_HASH_CHAIN  = 1;
+	public static final int F_BINARY_TREE = 2;
+	
+	/*
+	 * The shortest match kept by the filtered strategy
+	 */
+	private static final int FILTER_MATCH = 6;
+	
+	/*
+	 * The number of parses made by the optimal strategy (the codes
+	 * from each parse are used to price the next)
+	 */
+	private static final int OPTIMAL_PASSES = 3;
+	
+	/*
+	 * The kernels for the inner loops (scalar, or vector if enabled)
+	 */
+	private static final Kernels KERNELS = Kernels.get();
 	
 	/*
 	 * Constant values
@@ -33,12 +77,15 @@ public class Deflater {
 	private static final int N_LITERALS = 286;
 	private static final int N_DISTANCES = 30;
 	private static final int N_LENGTHS = 19;
+	private static final int MAX_STORED = 65535;
+	private static final int MIN_MATCH = 3;
+	private static final int MAX_MATCH = 258;
 	
 	
 	/**
-	 * The compressor instance.
+	 * The progress meter (or null if none).
 	 */
-	private GZCompressor gz;
+	private ProgressMeter progress;
 	
 	/**
 	 * The base input stream.
@@ -51,28 +98,312 @@ public class Deflater {
 	private BitOutputStream out;
 	
 	/**
-	 * The current checksum.
+	 * The compression strategy.
+	 */
+	private int strategy;
+	
+	/**
+	 * The options, and the settings from them used while compressing.
+	 */
+	private DeflaterOptions options;
+	private int mode;
+	private boolean lz77;
+	private int windowSize;
+	private boolean split;
+	private boolean debug;
+	
+	/**
+	 * The fixed Huffman codes (this deflater's own copy).
 	 */
-	private CRC32 crc;
+	private HuffmanTable fixedLit;
+	private HuffmanTable fixedDist;
 	
 	/**
-	 * The number of bits that are over the byte boundary
-	 * for the current block.
+	 * The current checksum, and this deflater's own CRC-32 and Adler-32
+	 * (the Adler-32 is created when first used).
 	 */
-	private int rem;
+	private Checksum checksum;
+	private CRC32 crc32;
+	private Adler32 adler32;
+	
+	/**
+	 * The preset dictionary (or null if none).
+	 */
+	private byte[] dictionary;
+	
+	/**
+	 * The match finder for the sliding window (which is kept at the
+	 * front of the input buffer), its type, and whether its tables are
+	 * off the heap.
+	 */
+	private MatchFinder window;
+	private int finder;
+	private boolean offHeap;
+	
+	/**
+	 * The input buffer (the sliding window, the data and a full match of lookahead).
+	 */
+	private byte[] buffer;
+	
+	/**
+	 * The data covered by the current block.
+	 */
+	private byte[] blockData;
+	private int blockSize;
+	
+	/**
+	 * The symbols in the current block (null for a literal byte).
+	 */
+	private LZPair[] blockPairs;
+	private int numSymbols;
+	
+	/**
+	 * The symbol frequencies for the current block.
+	 */
+	private int[] litFreq;
+	private int[] distFreq;
+	
+	/**
+	 * The start of the current segment and its symbol frequencies.
+	 */
+	private int segSymbol;
+	private int segSize;
+	private int[] segLitFreq;
+	private int[] segDistFreq;
+	
+	/**
+	 * The dynamic codes generated by the last call to dynamicSize().
+	 */
+	private HuffmanTable litTable;
+	private HuffmanTable distTable;
+	private HuffmanTable lenTable;
+	private List<Integer> lengths;
+	private int numLit, numDist, numLen;
+	
+	/**
+	 * The policy for new data, and the number of refills before the
+	 * data is probed again.
+	 */
+	private int policy;
+	private int skipProbes;
+	private int backoff;
+	private int[] probeTable;
+	
+	/**
+	 * The matches found at each position by the optimal strategy.
+	 */
+	private int[] optDist;
+	private int[] optLen;
+	
+	/**
+	 * The number of bytes handled under each policy.
+	 */
+	private long[] policyBytes;
+	
+	/**
+	 * The statistics for the stream.
+	 */
+	private CompressionStats stats;
+	
+	/**
+	 * The flight recorder event for the current block.
+	 */
+	private BlockEvent blockEvent;
 	
 	/**
 	 * Create a new Deflater.
-	 * @param gz The compressor instance
+	 * @param progress The progress meter (or null if none)
+	 * @param in The input stream
+	 * @param out The output stream
+	 */
+	public Deflater(ProgressMeter progress, BitInputStream in, BitOutputStream out) {
+		this(progress, in, out, S_DEFAULT);
+	}
+	
+	/**
+	 * Create a new Deflater with the given compression strategy.
+	 * @param progress The progress meter (or null if none)
+	 * @param in The input stream
+	 * @param out The output stream
+	 * @param strategy The compression strategy (one of the S_ constants)
+	 */
+	public Deflater(ProgressMeter progress, BitInputStream in, BitOutputStream out, int strategy) {
+		this(progress, in, out, strategy, DeflaterOptions.DEFAULT);
+	}
+	
+	/**
+	 * Create a new Deflater with the given compression strategy and options.
+	 * @param progress The progress meter (or null if none)
+	 * @param in The input stream
+	 * @param out The output stream
+	 * @param strategy The compression strategy (one of the S_ constants)
+	 * @param options The options
+	 */
+	public Deflater(ProgressMeter progress, BitInputStream in, BitOutputStream out, int strategy, DeflaterOptions options) {
+		if (strategy < S_DEFAULT || strategy > S_OPTIMAL) {
+			throw new IllegalArgumentException("Invalid strategy: " + strategy);
+		}
+		this.progress = progress;
+		this.in = in;
+		this.out = out;
+		this.strategy = strategy;
+		this.options = options;
+		mode = options.getMode();
+		lz77 = options.isLZ77();
+		windowSize = options.getWindowSize();
+		split = options.isBlockSplitting();
+		debug = options.isDebug();
+		fixedLit = HuffmanTable.fixedLiterals();
+		fixedDist = HuffmanTable.fixedDistances();
+		crc32 = new CRC32();
+		checksum = crc32;
+		window = new LinearFinder(windowSize);
+		finder = F_LINEAR;
+		buffer = new byte[windowSize + options.getBufferSize() + MAX_MATCH];
+		blockData = new byte[MAX_BLOCK_SIZE];
+		blockPairs = new LZPair[MAX_SYMBOLS];
+		litFreq = new int[N_LITERALS];
+		distFreq = new int[N_DISTANCES];
+		segLitFreq = new int[N_LITERALS];
+		segDistFreq = new int[N_DISTANCES];
+		litFreq[END_OF_BLOCK] = 1;
+		segLitFreq[END_OF_BLOCK] = 1;
+		policy = P_NORMAL;
+		skipProbes = 0;
+		backoff = 1;
+		probeTable = new int[4096];
+		optDist = new int[0];
+		optLen = new int[0];
+		policyBytes = new long[3];
+		stats = new CompressionStats();
+		blockEvent = new BlockEvent();
+	}
+	
+	/**
+	 * Reset the deflater to process a new stream, keeping its strategy, its
+	 * match finder and its buffers and tables. The checksum goes back to
+	 * CRC-32, the preset dictionary is dropped, and new statistics are
+	 * started (the statistics for the last stream are left unchanged).
+	 * @param progress The progress meter (or null if none)
 	 * @param in The input stream
 	 * @param out The output stream
 	 */
-	public Deflater(GZCompressor gz, BitInputStream in, BitOutputStream out) {
-		this.gz = gz;
+	public void reset(ProgressMeter progress, BitInputStream in, BitOutputStream out) {
+		this.progress = progress;
 		this.in = in;
 		this.out = out;
-		crc = new CRC32();
-		rem = 0;
+		crc32.reset();
+		checksum = crc32;
+		dictionary = null;
+		window.reset();
+		Arrays.fill(blockPairs, 0, numSymbols, null);
+		blockSize = 0;
+		numSymbols = 0;
+		segSymbol = 0;
+		segSize = 0;
+		Arrays.fill(litFreq, 0);
+		Arrays.fill(distFreq, 0);
+		Arrays.fill(segLitFreq, 0);
+		Arrays.fill(segDistFreq, 0);
+		litFreq[END_OF_BLOCK] = 1;
+		segLitFreq[END_OF_BLOCK] = 1;
+		policy = P_NORMAL;
+		skipProbes = 0;
+		backoff = 1;
+		Arrays.fill(policyBytes, 0);
+		stats = new CompressionStats();
+	}
+	
+	/**
+	 * Use a different checksum for the data (CRC-32 by default).
+	 * This must be called before the stream is processed.
+	 * @param checksum The checksum
+	 */
+	public void setChecksum(Checksum checksum) {
+		this.checksum = checksum;
+	}
+	
+	/**
+	 * Use Adler-32 for the data instead of CRC-32 (as zlib streams do),
+	 * reusing the same instance for every stream.
+	 * This must be called before the stream is processed.
+	 */
+	public void useAdler32() {
+		if (adler32 == null) {
+			adler32 = new Adler32();
+		} else {
+			adler32.reset();
+		}
+		checksum = adler32;
+	}
+	
+	/**
+	 * Use a different match finder (a linear search of the window by
+	 * default). This must be called before the stream is processed.
+	 * @param finder The match finder (one of the F_ constants)
+	 */
+	public void setMatchFinder(int finder) {
+		setMatchFinder(finder, new TableAllocator());
+	}
+	
+	/**
+	 * Use a different match finder, allocating its tables with the given
+	 * allocator (which the caller closes once the stream is processed).
+	 * This must be called before the stream is processed.
+	 * @param finder The match finder (one of the F_ constants)
+	 * @param tables The allocator for the finder's tables
+	 */
+	public void setMatchFinder(int finder, TableAllocator tables) {
+		this.finder = finder;
+		offHeap = tables.isOffHeap();
+		switch (finder) {
+			case F_LINEAR:
+				window = new LinearFinder(windowSize);
+				break;
+			case F_HASH_CHAIN:
+				window = new HashChainFinder(windowSize, tables);
+				break;
+			case F_BINARY_TREE:
+				window = new BinaryTreeFinder(windowSize, tables);
+				break;
+			default:
+				throw new IllegalArgumentException("Invalid match finder: " + finder);
+		}
+	}
+	
+	/**
+	 * Set a preset dictionary. The dictionary is loaded into the window,
+	 * so the data can refer back to it, but none of it is written out.
+	 * This must be called before the stream is processed.
+	 * @param b The dictionary
+	 */
+	public void setDictionary(byte[] b) {
+		dictionary = b.clone();
+	}
+	
+	/**
+	 * Change the compression mode, LZ77 search, block splitting and debug
+	 * logging between streams. The buffer and window are already allocated,
+	 * so their sizes can't change. This must be called before the stream is processed.
+	 * @param options The options (with the same buffer and window sizes)
+	 */
+	public void setOptions(DeflaterOptions options) {
+		if (!options.hasSameSizes(this.options)) {
+			throw new IllegalArgumentException("Buffer and window sizes can't change: " + options);
+		}
+		this.options = options;
+		mode = options.getMode();
+		lz77 = options.isLZ77();
+		split = options.isBlockSplitting();
+		debug = options.isDebug();
+	}
+	
+	/**
+	 * Get the options used by the deflater.
+	 * @return The options
+	 */
+	public DeflaterOptions getOptions() {
+		return options;
 	}
 	
 	/**
@@ -80,226 +411,842 @@ public class Deflater {
 	 * @return The size of the compressed data
 	 */
 	public long process() throws IOException {
-		// Create block streams
-		ByteArrayOutputStream blockOut = new ByteArrayOutputStream();
-		BitOutputStream block = new BitOutputStream(blockOut);
+		stats.enter(CompressionStats.T_MATCH);
+		StreamEvent streamEvent = new StreamEvent();
+		streamEvent.begin();
+		blockEvent.begin();
+		long startIn = in.getCount();
+		long startOut = out.getCount();
 		
-		// Create buffer and sliding window
-		byte[] buffer = new byte[BUFFER_SIZE];
-		LZWindow window = new LZWindow(WINDOW_SIZE);
+		// Load the end of the preset dictionary into the window
+		int start = 0;
+		if (dictionary != null) {
+			start = Math.min(dictionary.length, windowSize);
+			System.arraycopy(dictionary, dictionary.length - start, buffer, 0, start);
+			window.add(start);
+		}
 		
-		// Start writing blocks
-		int len;
-		while ((len = in.read(buffer, 0, BUFFER_SIZE)) > 0) {
-			// Log progress
-			gz.updateProgress(in.getCount());
-			
-			// Write previous block to output file
-			if (block.getCount() > 0) {
-				byte[] b = blockOut.toByteArray();
-				out.writeBits(0, 1);                                 // Write final bit
-				out.writeBits(MODE, 2);                              // Write block type
-				if (MODE == 0) {
-					out.flushBits();
+		// Start reading data, keeping the window in buffer[..start) and
+		// the unprocessed bytes in buffer[start..end)
+		int end = start;
+		boolean eof = false;
+		while (!eof || start < end) {
+			// Slide the window and lookahead to the front of the buffer and refill it
+			int keep = Math.max(0, start - windowSize);
+			if (keep > 0) {
+				KERNELS.copy(buffer, keep, buffer, 0, end - keep);
+				start -= keep;
+				end -= keep;
+			}
+			stats.enter(CompressionStats.T_INPUT);
+			int len = in.read(buffer, end, buffer.length - end);
+			if (len > 0) {
+				stats.enter(CompressionStats.T_CHECKSUM);
+				checksum.update(buffer, end, len);                   // Update checksum
+				end += len;
+				if (progress != null) {
+					progress.update(in.getCount(), out.getCount());  // Report progress (if due)
 				}
-				if (out.bitPos == 0 && rem == 0) {                   // Check if byte boundaries are aligned
-					out.write(b);
+			} else {
+				eof = true;
+			}
+			stats.enter(CompressionStats.T_MATCH);
+			
+			// Check whether the new data looks compressible
+			int limit = eof ? end : end - MAX_MATCH;
+			if (limit - start >= MIN_PROBE) {
+				if (skipProbes > 0) {
+					skipProbes--;
 				} else {
-					for (int i = 0; i < b.length; i++) {             // Write 8 bits at a time
-						if (i == b.length - 1 && rem > 0) {
-							out.writeBits(b[i], rem);                // Ignore unused bits on last byte
-						} else {
-							out.writeBits(b[i], 8);
-						}
-					}
+					updatePolicy(buffer, start, limit - start);
 				}
-				blockOut.reset();                                    // Clear block stream
 			}
-			
-			// Update checksum
-			crc.update(buffer, 0, len);
-			
-			if (MODE == 0) {
-				// Write uncompressed data
-				block.writeShort(len);
-				block.writeShort(len ^ 0xffff);
-				block.write(buffer, 0, len);
-				window.add(buffer, 0, len);
-				rem = 0;
-				continue;
+			if (start < limit) {
+				policyBytes[policy] += limit - start;
 			}
 			
-			// Initialise pair and frequency arrays
-			LZPair[] pairs = new LZPair[len];
-			int[] litFreq = new int[N_LITERALS];
-			int[] distFreq = new int[N_DISTANCES];
-			int[] lenFreq = new int[N_LENGTHS];
-			
-			// Find distance/length pairs and symbol frequencies
-			for (int i = 0; i < len; i++) {
-				LZPair pair = null;
-				if (ENABLE_LZ77) {
-					pair = window.find(buffer, i, len);              // Try and find a pair
-				}
-				if (pair != null) {
-					pairs[i] = pair;
-					window.add(buffer, i, pair.len);                 // Add 'len' bytes to window
-					i += (pair.len - 1);
-					distFreq[pair.distSymbol]++;                     // Update dist/len frequencies
-					litFreq[pair.lenSymbol]++;
-				} else {
-					window.add(buffer[i]);                           // Add one byte to window
-					litFreq[buffer[i] & 0xff]++;                     // Update byte frequencies
+			// Write incompressible data straight to the output file
+			if (policy == P_STORE && start < limit) {
+				if (numSymbols > 0) {
+					writeBlock(numSymbols, blockSize, litFreq, distFreq, false);
+					startBlock(numSymbols, blockSize);
 				}
+				writeStored(buffer, start, limit - start, false);
+				window.add(limit - start);
+				start = limit;
 			}
-			litFreq[END_OF_BLOCK]++;                                 // Add EOB marker
 			
-			// Start generating Huffman codes
-			int[] litCode, litCodeLen, distCode, distCodeLen, lenCode, lenCodeLen;
-			List<Integer> lengths;
-			
-			if (MODE == 2) {
-				// Generate literal codes
-				HuffmanTree litTree = new HuffmanTree(litFreq, 15);
-				HuffmanTable litTable = litTree.getTable();
-				litCode = litTable.code;
-				litCodeLen = litTable.codeLen;
-				
-				// Generate distance codes
-				HuffmanTree distTree = new HuffmanTree(distFreq, 15);
-				HuffmanTable distTable = distTree.getTable();
-				distCode = distTable.code;
-				distCodeLen = distTable.codeLen;
-				
-				// Pack codelengths
-				lengths = HuffmanTable.packCodeLengths(litCodeLen, distCodeLen);
-				
-				// Find length symbol frequencies
-				Iterator<Integer> iter = lengths.iterator();
-				while (iter.hasNext()) {
-					int s = iter.next();
-					lenFreq[s]++;
-					if (s == 16 || s == 17 || s == 18) {             // Skip run-length bits
-						iter.next();
+			// Find distance/length pairs while a full match of lookahead remains
+			// (or up to the end of the data), adding each symbol to the current block
+			boolean search = lz77 && mode != M_STORED && policy == P_NORMAL;
+			int minMatch = (strategy == S_FILTERED) ? FILTER_MATCH : MIN_MATCH;
+			if (strategy == S_HUFFMAN_ONLY) {
+				while (start < limit) {                              // Literals only (no window needed)
+					addSymbol(buffer, start, null);
+					start++;
+				}
+			} else if (strategy == S_RLE) {
+				while (start < limit) {                              // Runs at distance 1 only (no match finder needed)
+					LZPair pair = null;
+					if (search && start > 0) {
+						pair = findRun(buffer, start, end);
 					}
+					addSymbol(buffer, start, pair);
+					start += (pair != null) ? pair.len : 1;
+				}
+			} else if (strategy == S_OPTIMAL && search) {
+				if (start < limit) {
+					start = parseOptimal(buffer, start, limit, end); // Cheapest path through all matches
 				}
-				
-				// Generate length codes
-				HuffmanTree lenTree = new HuffmanTree(lenFreq, 7);
-				HuffmanTable lenTable = lenTree.getTable();
-				lenCode = lenTable.code;
-				lenCodeLen = lenTable.codeLen;
 			} else {
-				// Use default codes
-				litCode = HuffmanTable.LIT.code;
-				litCodeLen = HuffmanTable.LIT.codeLen;
-				
-				distCode = HuffmanTable.DIST.code;
-				distCodeLen = HuffmanTable.DIST.codeLen;
-				
-				lengths = null;
-				lenCode = null;
-				lenCodeLen = null;
-			}
-			
-			// Print codes (for debugging)
-			if (DEBUG) {
-				System.out.println("Length codes:");
-				for (int i = 0; i < N_LENGTHS; i++) {
-					if (lenCodeLen[i] > 0) {
-						String code = String.format("%" + lenCodeLen[i] + "s", Integer.toBinaryString(lenCode[i]));
-						code = code.replace(' ', '0');
-						System.out.println(i + "\t" + code);
+				while (start < limit) {
+					LZPair pair = null;
+					if (search) {
+						pair = window.find(buffer, start, end, minMatch);  // Try and find a pair
 					}
-				}
-				System.out.println("Literal codes:");
-				for (int i = 0; i < N_LITERALS; i++) {
-					if (litCodeLen[i] > 0) {
-						String code = String.format("%" + litCodeLen[i] + "s", Integer.toBinaryString(litCode[i]));
-						code = code.replace(' ', '0');
-						System.out.println(i + "\t" + code);
+					if (pair != null) {
+						window.add(pair.len);                        // Add 'len' bytes to window
+						addSymbol(buffer, start, pair);
+						start += pair.len;
+					} else {
+						window.add(1);                               // Add one byte to window
+						addSymbol(buffer, start, null);
+						start++;
 					}
 				}
-				System.out.println("Distance codes:");
-				for (int i = 0; i < N_DISTANCES; i++) {
-					if (distCodeLen[i] > 0) {
-						String code = String.format("%" + distCodeLen[i] + "s", Integer.toBinaryString(distCode[i]));
-						code = code.replace(' ', '0');
-						System.out.println(i + "\t" + code);
+			}
+		}
+		
+		// Write final block to output file
+		writeBlock(numSymbols, blockSize, litFreq, distFreq, true);
+		stats.enter(CompressionStats.T_OUTPUT);
+		out.flushBits();                                             // Flush output stream
+		stats.stop();
+		stats.setSearches(window.getSearchCount(), window.getRecentHits(), window.getRecentEarlyHits());
+		
+		// Record the stream
+		if (streamEvent.shouldCommit()) {
+			streamEvent.operation = "compress";
+			streamEvent.rawSize = in.getCount() - startIn;
+			streamEvent.compressedSize = out.getCount() - startOut;
+			streamEvent.ratio = (double) streamEvent.compressedSize / Math.max(1, streamEvent.rawSize);
+			streamEvent.blocks = stats.getBlockCount();
+			streamEvent.checksumTime = stats.getPhaseNanos(CompressionStats.T_CHECKSUM);
+			streamEvent.commit();
+		}
+		
+		// Finished
+		return out.getCount();
+	}
+	
+	/**
+	 * Find a run of the previous byte (a match at distance 1).
+	 * @param b The data array
+	 * @param off The starting offset (after the previous byte)
+	 * @param len The number of bytes
+	 * @return A distance/length pair
+	 */
+	private static LZPair findRun(byte[] b, int off, int len) {
+		int n = KERNELS.matchLength(b, off - 1, off, Math.min(MAX_MATCH, len - off));
+		return (n >= MIN_MATCH) ? new LZPair(1, n) : null;
+	}
+	
+	/**
+	 * Parse data as the cheapest sequence of literals and matches, pricing
+	 * each symbol by its codelength (plus extra bits). The first parse uses
+	 * codes built from the current block (or the fixed codes if the block is
+	 * empty), and each later parse uses codes built from the one before.
+	 * Symbols start before the limit, but the last one may run past it into
+	 * the lookahead. The parse stops where the path is cheapest once the rest
+	 * of the lookahead is priced at the average cost per byte so far.
+	 * @param b The data array
+	 * @param off The starting offset
+	 * @param limit The offset that the last symbol starts before
+	 * @param end The ending offset
+	 * @return The offset after the last symbol
+	 */
+	private int parseOptimal(byte[] b, int off, int limit, int end) throws IOException {
+		int n = end - off;
+		int m = limit - off;
+		
+		// Collect the useful matches at each position before the limit
+		int[] first = new int[m + 1];
+		int[] dists = new int[MAX_MATCH];
+		int[] lens = new int[MAX_MATCH];
+		int count = 0;
+		for (int i = 0; i < m; i++) {
+			first[i] = count;
+			int found = window.findAll(b, off + i, end, dists, lens);
+			if (count + found > optDist.length) {
+				optDist = Arrays.copyOf(optDist, Math.max(2 * optDist.length, count + found));
+				optLen = Arrays.copyOf(optLen, optDist.length);
+			}
+			System.arraycopy(dists, 0, optDist, count, found);
+			System.arraycopy(lens, 0, optLen, count, found);
+			count += found;
+			window.add(1);
+		}
+		first[m] = count;
+		
+		// Price symbols with the current block's codes
+		int[] litCost;
+		int[] distCost;
+		int[] parseLitFreq = new int[N_LITERALS];
+		int[] parseDistFreq = new int[N_DISTANCES];
+		if (numSymbols > 0) {
+			litCost = symbolCosts(litFreq, parseLitFreq);
+			distCost = symbolCosts(distFreq, parseDistFreq);
+		} else {
+			litCost = fixedLit.codeLen;
+			distCost = fixedDist.codeLen;
+		}
+		
+		int[] cost = new int[n + 1];
+		int[] choiceLen = new int[n + 1];                            // Symbol ending at each position
+		int[] choiceDist = new int[n + 1];
+		int stop = m;
+		for (int pass = 0; pass < OPTIMAL_PASSES; pass++) {
+			// Find the cheapest path to each position
+			Arrays.fill(cost, 1, n + 1, Integer.MAX_VALUE);
+			for (int i = 0; i < m; i++) {
+				int c = cost[i] + litCost[b[off + i] & 0xff];
+				if (c < cost[i + 1]) {                               // Literal
+					cost[i + 1] = c;
+					choiceLen[i + 1] = 1;
+				}
+				int k = MIN_MATCH;
+				for (int j = first[i]; j < first[i + 1]; j++) {      // Matches (each length at its shortest distance)
+					int ds = LZPair.distanceSymbol(optDist[j]);
+					int dc = cost[i] + distCost[ds] + LZPair.distanceExtraBits(ds);
+					for (; k <= optLen[j]; k++) {
+						int ls = LZPair.lengthSymbol(k);
+						c = dc + litCost[ls] + LZPair.lengthExtraBits(ls - 257);
+						if (c < cost[i + k]) {
+							cost[i + k] = c;
+							choiceLen[i + k] = k;
+							choiceDist[i + k] = optDist[j];
+						}
 					}
 				}
 			}
 			
-			// Write compressed data
-			if (MODE == 2) {
-				block.writeBits(N_LITERALS - 257, 5);                // Number of literal codes
-				block.writeBits(N_DISTANCES - 1, 5);                 // Number of distance codes
-				block.writeBits(N_LENGTHS - 4, 4);                   // Number of length codes
-				for (int i = 0; i < N_LENGTHS; i++) {                // Length codelengths
-					block.writeBits(lenCodeLen[LEN_ORDER[i]], 3);
-				}
-				Iterator<Integer> iter = lengths.iterator();
-				while (iter.hasNext()) {                             // Literal/distance codelengths (as length codes)
-					int s = iter.next();
-					block.writeBitsR(lenCode[s], lenCodeLen[s]);
-					if (s == 16) {                                   // Extra bits for run-length
-						block.writeBits(iter.next(), 2);
-					} else if (s == 17) {
-						block.writeBits(iter.next(), 3);
-					} else if (s == 18) {
-						block.writeBits(iter.next(), 7);
-					}
+			// Choose where to stop
+			double rate = (double) cost[m] / m;
+			stop = m;
+			for (int i = m + 1; i <= n; i++) {
+				if (cost[i] != Integer.MAX_VALUE && cost[i] - rate * (i - m) < cost[stop] - rate * (stop - m)) {
+					stop = i;
 				}
 			}
-			for (int i = 0; i < len; i++) {                          // Data (as literal/distance codes)
-				LZPair pair = pairs[i];
-				if (pair != null) {
-					int s = pair.lenSymbol;
-					block.writeBitsR(litCode[s], litCodeLen[s]);
-					block.writeBits(pair.lenBits, pair.lenNumBits);
-					int t = pair.distSymbol;
-					block.writeBitsR(distCode[t], distCodeLen[t]);
-					block.writeBits(pair.distBits, pair.distNumBits);
-					i += (pair.len - 1);
+			if (pass == OPTIMAL_PASSES - 1) break;
+			
+			// Reprice symbols with the codes for this parse
+			Arrays.fill(parseLitFreq, 0);
+			Arrays.fill(parseDistFreq, 0);
+			for (int i = stop; i > 0; i -= choiceLen[i]) {
+				if (choiceLen[i] == 1) {
+					parseLitFreq[b[off + i - 1] & 0xff]++;
 				} else {
-					int s = buffer[i] & 0xff;
-					block.writeBitsR(litCode[s], litCodeLen[s]);
+					parseLitFreq[LZPair.lengthSymbol(choiceLen[i])]++;
+					parseDistFreq[LZPair.distanceSymbol(choiceDist[i])]++;
 				}
 			}
-			block.writeBitsR(litCode[END_OF_BLOCK], litCodeLen[END_OF_BLOCK]);
-			rem = block.bitPos;
-			block.flushBits();                                       // Flush block stream
+			litCost = symbolCosts(litFreq, parseLitFreq);
+			distCost = symbolCosts(distFreq, parseDistFreq);
 		}
 		
-		// Write final block to output file
-		byte[] b = blockOut.toByteArray();
-		out.writeBits(1, 1);                                         // Write final bit
-		out.writeBits(MODE, 2);                                      // Write block type
-		if (MODE == 0) {
-			out.flushBits();
+		// Add the symbols on the cheapest path to the block
+		int[] path = new int[stop];
+		int numSteps = 0;
+		for (int i = stop; i > 0; i -= choiceLen[i]) {
+			path[numSteps++] = i;
+		}
+		int pos = 0;
+		while (numSteps > 0) {
+			int i = path[--numSteps];
+			if (choiceLen[i] == 1) {
+				addSymbol(b, off + pos, null);
+			} else {
+				addSymbol(b, off + pos, new LZPair(choiceDist[i], choiceLen[i]));
+			}
+			pos = i;
+		}
+		window.add(stop - m);                                        // Add the rest of the last match to window
+		return off + stop;
+	}
+	
+	/**
+	 * Find the cost of each symbol under Huffman codes built for the given
+	 * frequencies. Unused symbols cost the longest codelength, so that
+	 * they can still be chosen.
+	 * @param blockFreq The frequencies in the current block
+	 * @param parseFreq The frequencies in the last parse
+	 * @return The codelength of each symbol
+	 */
+	private static int[] symbolCosts(int[] blockFreq, int[] parseFreq) {
+		int[] freq = new int[blockFreq.length];
+		for (int i = 0; i < freq.length; i++) {
+			freq[i] = blockFreq[i] + parseFreq[i];
+		}
+		int[] cost = new HuffmanTree(freq, 15).getTable().codeLen;
+		for (int i = 0; i < cost.length; i++) {
+			if (cost[i] == 0) cost[i] = 15;
+		}
+		return cost;
+	}
+	
+	/**
+	 * Add a symbol to the current block, writing the block out once it is
+	 * full or once its statistics change enough to be worth a new block.
+	 * @param b The data array
+	 * @param off The offset of the symbol's data
+	 * @param pair The distance/length pair, or null for a literal byte
+	 */
+	private void addSymbol(byte[] b, int off, LZPair pair) throws IOException {
+		// Make room for the symbol
+		if (numSymbols == MAX_SYMBOLS || blockSize + MAX_MATCH > MAX_BLOCK_SIZE) {
+			writeBlock(numSymbols, blockSize, litFreq, distFreq, false);
+			startBlock(numSymbols, blockSize);
 		}
-		if (out.bitPos == 0 && rem == 0) {                           // Check if byte boundaries are aligned
-			out.write(b);
+		
+		// Add the symbol and update frequencies
+		int n;
+		if (pair != null) {
+			n = pair.len;
+			stats.addMatch(pair.len, pair.dist);
+			litFreq[pair.lenSymbol]++;
+			distFreq[pair.distSymbol]++;
+			segLitFreq[pair.lenSymbol]++;
+			segDistFreq[pair.distSymbol]++;
 		} else {
-			for (int i = 0; i < b.length; i++) {                     // Write 8 bits at a time
-				if (i == b.length - 1 && rem > 0) {
-					out.writeBits(b[i], rem);                        // Ignore unused bits on last byte
-				} else {
-					out.writeBits(b[i], 8);
+			n = 1;
+			stats.addLiteral();
+			litFreq[b[off] & 0xff]++;
+			segLitFreq[b[off] & 0xff]++;
+		}
+		System.arraycopy(b, off, blockData, blockSize, n);
+		blockSize += n;
+		blockPairs[numSymbols++] = pair;
+		
+		// Check for a block split at the end of each segment
+		if (numSymbols - segSymbol == SEGMENT_SIZE) {
+			endSegment();
+		}
+	}
+	
+	/**
+	 * End the current segment. If the part of the block before the segment
+	 * and the segment itself are cheaper as two blocks (each with its own
+	 * codes) than as one, the part before the segment is written out.
+	 */
+	private void endSegment() throws IOException {
+		if (split && segSymbol > 0 && mode >= M_DYNAMIC && strategy != S_FIXED) {
+			// Find the frequencies for the part before the segment
+			int[] headLitFreq = new int[N_LITERALS];
+			int[] headDistFreq = new int[N_DISTANCES];
+			for (int i = 0; i < N_LITERALS; i++) {
+				headLitFreq[i] = litFreq[i] - segLitFreq[i];
+			}
+			for (int i = 0; i < N_DISTANCES; i++) {
+				headDistFreq[i] = distFreq[i] - segDistFreq[i];
+			}
+			headLitFreq[END_OF_BLOCK] = 1;
+			
+			// Compare the cost of one block against two
+			int prev = stats.enter(CompressionStats.T_HUFFMAN);
+			long joined = blockCost(litFreq, distFreq, blockSize);
+			long head = blockCost(headLitFreq, headDistFreq, segSize);
+			long tail = blockCost(segLitFreq, segDistFreq, blockSize - segSize);
+			stats.enter(prev);
+			if (head + tail < joined) {
+				if (debug) {
+					System.out.println(String.format("Block split: %d + %d bits < %d bits", head, tail, joined));
 				}
+				writeBlock(segSymbol, segSize, headLitFreq, headDistFreq, false);
+				startBlock(segSymbol, segSize);
 			}
 		}
-		out.flushBits();                                             // Flush output stream
 		
-		// Finished
-		return out.getCount();
+		// Start a new segment
+		segSymbol = numSymbols;
+		segSize = blockSize;
+		Arrays.fill(segLitFreq, 0);
+		Arrays.fill(segDistFreq, 0);
+		segLitFreq[END_OF_BLOCK] = 1;
+	}
+	
+	/**
+	 * Start a new block by removing the symbols that have been written.
+	 * @param n The number of symbols written
+	 * @param size The number of bytes written
+	 */
+	private void startBlock(int n, int size) {
+		// Move the remaining symbols and data to the front
+		System.arraycopy(blockPairs, n, blockPairs, 0, numSymbols - n);
+		Arrays.fill(blockPairs, numSymbols - n, numSymbols, null);
+		System.arraycopy(blockData, size, blockData, 0, blockSize - size);
+		numSymbols -= n;
+		blockSize -= size;
+		segSymbol -= Math.min(n, segSymbol);
+		segSize -= Math.min(size, segSize);
+		
+		// The remaining symbols all belong to the current segment
+		if (numSymbols > 0) {
+			System.arraycopy(segLitFreq, 0, litFreq, 0, N_LITERALS);
+			System.arraycopy(segDistFreq, 0, distFreq, 0, N_DISTANCES);
+		} else {
+			Arrays.fill(litFreq, 0);
+			Arrays.fill(distFreq, 0);
+			Arrays.fill(segLitFreq, 0);
+			Arrays.fill(segDistFreq, 0);
+			litFreq[END_OF_BLOCK] = 1;
+			segLitFreq[END_OF_BLOCK] = 1;
+		}
+	}
+	
+	/**
+	 * Write the first symbols of the current block to the output file,
+	 * using the cheapest block type allowed by the compression mode.
+	 * @param n The number of symbols
+	 * @param size The number of bytes covered by the symbols
+	 * @param litFreq The literal frequencies of the symbols
+	 * @param distFreq The distance frequencies of the symbols
+	 * @param last Whether this is the final block
+	 */
+	private void writeBlock(int n, int size, int[] litFreq, int[] distFreq, boolean last) throws IOException {
+		// Find the cheapest block type from the exact size of each encoding
+		int prev = stats.enter(CompressionStats.T_HUFFMAN);
+		int blockType = mode;
+		if (strategy == S_FIXED && mode != M_STORED) {
+			// Use fixed codes, unless a stored block is smaller
+			blockType = 1;
+			if (mode == M_CHEAPEST && storedSize(size, out.bitPos) < dataSize(litFreq, fixedLit.codeLen, distFreq, fixedDist.codeLen)) {
+				blockType = 0;
+			}
+		} else if (mode == M_CHEAPEST) {
+			long dynamicSize = dynamicSize(litFreq, distFreq);
+			long fixedSize = dataSize(litFreq, fixedLit.codeLen, distFreq, fixedDist.codeLen);
+			long storedSize = storedSize(size, out.bitPos);
+			blockType = 2;
+			if (fixedSize <= dynamicSize) {
+				blockType = 1;
+			}
+			if (storedSize < Math.min(fixedSize, dynamicSize)) {
+				blockType = 0;
+			}
+			if (debug) {
+				System.out.println(String.format("Block costs: stored = %d, fixed = %d, dynamic = %d bits", storedSize, fixedSize, dynamicSize));
+			}
+		} else if (mode == M_DYNAMIC) {
+			dynamicSize(litFreq, distFreq);
+		}
+		
+		if (blockType == 0) {
+			// Write uncompressed data
+			stats.enter(prev);
+			writeStored(blockData, 0, size, last);
+			return;
+		}
+		
+		// Get the codes for the block
+		int[] litCode, litCodeLen, distCode, distCodeLen, lenCode, lenCodeLen;
+		if (blockType == 2) {
+			litCode = litTable.code;
+			litCodeLen = litTable.codeLen;
+			distCode = distTable.code;
+			distCodeLen = distTable.codeLen;
+			lenCode = lenTable.code;
+			lenCodeLen = lenTable.codeLen;
+			
+			// Log header size
+			int bits = headerSize(lengths, lenCodeLen);
+			stats.addHeaderBits(bits);
+			if (debug) {
+				System.out.println(String.format("Block header: %d bits (HLIT = %d, HDIST = %d, HCLEN = %d)", bits, numLit, numDist, numLen));
+			}
+		} else {
+			// Use default codes
+			litCode = fixedLit.code;
+			litCodeLen = fixedLit.codeLen;
+			
+			distCode = fixedDist.code;
+			distCodeLen = fixedDist.codeLen;
+			
+			lenCode = null;
+			lenCodeLen = null;
+		}
+		
+		// Print codes (for debugging)
+		if (debug && blockType == 2) {
+			System.out.println("Length codes:");
+			for (int i = 0; i < N_LENGTHS; i++) {
+				if (lenCodeLen[i] > 0) {
+					String code = String.format("%" + lenCodeLen[i] + "s", Integer.toBinaryString(lenCode[i]));
+					code = code.replace(' ', '0');
+					System.out.println(i + "\t" + code);
+				}
+			}
+			System.out.println("Literal codes:");
+			for (int i = 0; i < N_LITERALS; i++) {
+				if (litCodeLen[i] > 0) {
+					String code = String.format("%" + litCodeLen[i] + "s", Integer.toBinaryString(litCode[i]));
+					code = code.replace(' ', '0');
+					System.out.println(i + "\t" + code);
+				}
+			}
+			System.out.println("Distance codes:");
+			for (int i = 0; i < N_DISTANCES; i++) {
+				if (distCodeLen[i] > 0) {
+					String code = String.format("%" + distCodeLen[i] + "s", Integer.toBinaryString(distCode[i]));
+					code = code.replace(' ', '0');
+					System.out.println(i + "\t" + code);
+				}
+			}
+		}
+		
+		// Write compressed data
+		stats.enter(CompressionStats.T_OUTPUT);
+		long startBits = out.getBitCount();
+		out.writeBits(last ? 1 : 0, 1);                              // Write final bit
+		out.writeBits(blockType, 2);                                 // Write block type
+		if (blockType == 2) {
+			out.writeBits(numLit - 257, 5);                          // Number of literal codes
+			out.writeBits(numDist - 1, 5);                           // Number of distance codes
+			out.writeBits(numLen - 4, 4);                            // Number of length codes
+			for (int i = 0; i < numLen; i++) {                       // Length codelengths
+				out.writeBits(lenCodeLen[LEN_ORDER[i]], 3);
+			}
+			Iterator<Integer> iter = lengths.iterator();
+			while (iter.hasNext()) {                                 // Literal/distance codelengths (as length codes)
+				int s = iter.next();
+				out.writeBitsR(lenCode[s], lenCodeLen[s]);
+				if (s == 16) {                                       // Extra bits for run-length
+					out.writeBits(iter.next(), 2);
+				} else if (s == 17) {
+					out.writeBits(iter.next(), 3);
+				} else if (s == 18) {
+					out.writeBits(iter.next(), 7);
+				}
+			}
+		}
+		int off = 0;
+		for (int i = 0; i < n; i++) {                                // Data (as literal/distance codes)
+			LZPair pair = blockPairs[i];
+			if (pair != null) {
+				int s = pair.lenSymbol;
+				out.writeBitsR(litCode[s], litCodeLen[s]);
+				out.writeBits(pair.lenBits, pair.lenNumBits);
+				int t = pair.distSymbol;
+				out.writeBitsR(distCode[t], distCodeLen[t]);
+				out.writeBits(pair.distBits, pair.distNumBits);
+				off += pair.len;
+			} else {
+				int s = blockData[off] & 0xff;
+				out.writeBitsR(litCode[s], litCodeLen[s]);
+				off++;
+			}
+		}
+		out.writeBitsR(litCode[END_OF_BLOCK], litCodeLen[END_OF_BLOCK]);
+		stats.addBlock(blockType, size);
+		endBlockEvent(blockType, size, startBits, n);
+		stats.enter(prev);
+	}
+	
+	/**
+	 * Write data to the output file as one or more stored blocks.
+	 * @param b The data array
+	 * @param off The starting offset
+	 * @param size The number of bytes
+	 * @param last Whether the data ends the final block
+	 */
+	private void writeStored(byte[] b, int off, int size, boolean last) throws IOException {
+		int prev = stats.enter(CompressionStats.T_OUTPUT);
+		int end = off + size;
+		do {
+			long startBits = out.getBitCount();
+			int len = Math.min(end - off, MAX_STORED);
+			out.writeBits((last && off + len == end) ? 1 : 0, 1);   // Write final bit
+			out.writeBits(0, 2);                                     // Write block type
+			out.flushBits();
+			out.writeShort(len);
+			out.writeShort(len ^ 0xffff);
+			out.write(b, off, len);
+			off += len;
+			stats.addBlock(0, len);
+			endBlockEvent(0, len, startBits, 0);
+		} while (off < end);
+		stats.enter(prev);
+	}
+	
+	/**
+	 * Commit the flight recorder event for a block that has been written
+	 * (if it is being recorded), and start timing the next block.
+	 * @param type The block type
+	 * @param size The number of bytes in the block
+	 * @param startBits The output bit count before the block
+	 * @param n The number of symbols in the block
+	 */
+	private void endBlockEvent(int type, int size, long startBits, int n) {
+		if (blockEvent.shouldCommit()) {
+			blockEvent.operation = "compress";
+			blockEvent.type = type;
+			blockEvent.rawSize = size;
+			blockEvent.compressedSize = out.getBitCount() - startBits;
+			blockEvent.symbols = n;
+			blockEvent.commit();
+			blockEvent = new BlockEvent();
+		}
+		blockEvent.begin();
+	}
+	
+	/**
+	 * Probe new data to choose how it is compressed. Data with few repeated
+	 * strings skips the LZ77 search, and if its byte entropy is also close to
+	 * 8 bits it is stored (when the mode allows it). While the data stays
+	 * incompressible, probing backs off exponentially.
+	 * @param b The data array
+	 * @param off The starting offset
+	 * @param len The number of bytes
+	 */
+	private void updatePolicy(byte[] b, int off, int len) {
+		if (mode == M_STORED || !lz77) return;
+		
+		// Count byte frequencies and repeats of 4-byte strings
+		int[] freq = new int[256];
+		KERNELS.histogram(b, off, len, freq);
+		int repeats = 0;
+		int hash = 0;
+		Arrays.fill(probeTable, -1);
+		for (int i = off; i < off + len; i++) {
+			hash = (hash << 8) | (b[i] & 0xff);
+			if (i - off >= 3) {
+				int h = (hash * 0x9e3779b1) >>> 20;                  // Hash of bytes i-3..i
+				int j = probeTable[h];
+				if (j >= 0 && b[j] == b[i] && b[j - 1] == b[i - 1]
+						&& b[j - 2] == b[i - 2] && b[j - 3] == b[i - 3]) {
+					repeats++;
+				}
+				probeTable[h] = i;
+			}
+		}
+		
+		// Find the byte entropy (in bits per byte)
+		double entropy = 0;
+		for (int i = 0; i < 256; i++) {
+			if (freq[i] > 0) {
+				double p = (double) freq[i] / len;
+				entropy -= p * Math.log(p);
+			}
+		}
+		entropy /= Math.log(2);
+		
+		// Choose the policy
+		double matchRate = (double) repeats / len;
+		int next = P_NORMAL;
+		if (matchRate < 0.02) {
+			next = (entropy > 7.9 && mode == M_CHEAPEST) ? P_STORE : P_HUFFMAN_ONLY;
+		}
+		if (next == P_NORMAL) {
+			backoff = 1;
+		} else {
+			skipProbes = backoff;
+			backoff = Math.min(backoff * 2, MAX_BACKOFF);
+		}
+		if (debug && next != policy) {
+			System.out.println(String.format("Policy %d -> %d (entropy = %.3f, match rate = %.4f)", policy, next, entropy, matchRate));
+		}
+		policy = next;
+	}
+	
+	/**
+	 * Find the size of the cheapest block type allowed by the compression
+	 * mode for the given symbols.
+	 * @param litFreq The literal frequencies
+	 * @param distFreq The distance frequencies
+	 * @param size The number of bytes covered by the symbols
+	 * @return The block size (in bits)
+	 */
+	private long blockCost(int[] litFreq, int[] distFreq, int size) {
+		long cost = dynamicSize(litFreq, distFreq);
+		if (mode == M_CHEAPEST) {
+			cost = Math.min(cost, dataSize(litFreq, fixedLit.codeLen, distFreq, fixedDist.codeLen));
+			cost = Math.min(cost, storedSize(size, 0));
+		}
+		return cost;
+	}
+	
+	/**
+	 * Generate dynamic codes for the given frequencies.
+	 * @param litFreq The literal frequencies
+	 * @param distFreq The distance frequencies
+	 * @return The size of a dynamic block using the codes (in bits)
+	 */
+	private long dynamicSize(int[] litFreq, int[] distFreq) {
+		// Generate literal and distance codes
+		litTable = new HuffmanTree(litFreq, 15).getTable();
+		distTable = new HuffmanTree(distFreq, 15).getTable();
+		int[] litCodeLen = litTable.codeLen;
+		int[] distCodeLen = distTable.codeLen;
+		
+		// Trim unused codes from the end of each table
+		numLit = N_LITERALS;
+		numDist = N_DISTANCES;
+		while (numLit > 257 && litCodeLen[numLit - 1] == 0) numLit--;
+		while (numDist > 1 && distCodeLen[numDist - 1] == 0) numDist--;
+		
+		// Pack codelengths greedily, then generate length codes
+		lengths = HuffmanTable.packCodeLengths(litCodeLen, numLit, distCodeLen, numDist, null);
+		lenTable = new HuffmanTree(countLengths(lengths), 7).getTable();
+		
+		// Repack each run at its cheapest under those codes, and keep it if smaller
+		List<Integer> priced = HuffmanTable.packCodeLengths(litCodeLen, numLit, distCodeLen, numDist, lenTable.codeLen);
+		HuffmanTable pricedTable = new HuffmanTree(countLengths(priced), 7).getTable();
+		if (headerSize(priced, pricedTable.codeLen) < headerSize(lengths, lenTable.codeLen)) {
+			lengths = priced;
+			lenTable = pricedTable;
+		}
+		numLen = N_LENGTHS;
+		while (numLen > 4 && lenTable.codeLen[LEN_ORDER[numLen - 1]] == 0) numLen--;
+		
+		return headerSize(lengths, lenTable.codeLen) + dataSize(litFreq, litCodeLen, distFreq, distCodeLen);
+	}
+	
+	/**
+	 * Calculate the size of the data in a Huffman block, including the
+	 * block type and the extra bits of each length and distance.
+	 * @param litFreq The literal frequencies
+	 * @param litCodeLen The literal codelengths
+	 * @param distFreq The distance frequencies
+	 * @param distCodeLen The distance codelengths
+	 * @return The data size (in bits)
+	 */
+	private static long dataSize(int[] litFreq, int[] litCodeLen, int[] distFreq, int[] distCodeLen) {
+		long bits = 3;
+		for (int i = 0; i < N_LITERALS; i++) {
+			bits += (long) litFreq[i] * litCodeLen[i];
+			if (i > END_OF_BLOCK) {
+				bits += (long) litFreq[i] * LZPair.lengthExtraBits(i - 257);
+			}
+		}
+		for (int i = 0; i < N_DISTANCES; i++) {
+			bits += (long) distFreq[i] * (distCodeLen[i] + LZPair.distanceExtraBits(i));
+		}
+		return bits;
+	}
+	
+	/**
+	 * Calculate the size of the stored blocks needed for the given data.
+	 * @param len The number of bytes
+	 * @param bitPos The bit position that the first block starts at
+	 * @return The block size (in bits)
+	 */
+	private static long storedSize(int len, int bitPos) {
+		int pad = (8 - (bitPos + 3) % 8) % 8;                        // Padding to the byte boundary
+		int numStored = Math.max(1, (len + MAX_STORED - 1) / MAX_STORED);
+		return 3 + pad + 32 + (numStored - 1) * (3 + 5 + 32) + 8L * len;
+	}
+	
+	/**
+	 * Count the length symbols in a list of packed codelengths.
+	 * @param lengths The packed codelengths
+	 * @return The length symbol frequencies
+	 */
+	private static int[] countLengths(List<Integer> lengths) {
+		int[] lenFreq = new int[N_LENGTHS];
+		Iterator<Integer> iter = lengths.iterator();
+		while (iter.hasNext()) {
+			int s = iter.next();
+			lenFreq[s]++;
+			if (s == 16 || s == 17 || s == 18) {                     // Skip run-length bits
+				iter.next();
+			}
+		}
+		return lenFreq;
+	}
+	
+	/**
+	 * Calculate the size of a dynamic block header.
+	 * @param lengths The packed codelengths
+	 * @param lenCodeLen The length codelengths
+	 * @return The header size (in bits)
+	 */
+	private static int headerSize(List<Integer> lengths, int[] lenCodeLen) {
+		int numLen = N_LENGTHS;
+		while (numLen > 4 && lenCodeLen[LEN_ORDER[numLen - 1]] == 0) numLen--;
+		int bits = 5 + 5 + 4 + 3 * numLen;
+		Iterator<Integer> iter = lengths.iterator();
+		while (iter.hasNext()) {
+			int s = iter.next();
+			bits += lenCodeLen[s];
+			if (s == 16) {                                           // Extra bits for run-length
+				bits += 2;
+				iter.next();
+			} else if (s == 17) {
+				bits += 3;
+				iter.next();
+			} else if (s == 18) {
+				bits += 7;
+				iter.next();
+			}
+		}
+		return bits;
+	}
+	
+	/**
+	 * Get the statistics for the stream (the phase times, blocks,
+	 * symbols and header sizes).
+	 * @return The statistics
+	 */
+	public CompressionStats getStats() {
+		return stats;
+	}
+	
+	/**
+	 * Get the number of bytes handled under the given policy.
+	 * @param p The policy (0 = normal, 1 = Huffman only, 2 = stored)
+	 * @return The byte count
+	 */
+	public long getPolicyBytes(int p) {
+		return policyBytes[p];
+	}
+	
+	/**
+	 * Get the compression strategy.
+	 * @return The strategy (one of the S_ constants)
+	 */
+	public int getStrategy() {
+		return strategy;
+	}
+	
+	/**
+	 * Get the type of match finder.
+	 * @return The match finder (one of the F_ constants)
+	 */
+	public int getMatchFinderType() {
+		return finder;
+	}
+	
+	/**
+	 * Check whether the match finder's tables are allocated off the heap.
+	 * @return True if off-heap
+	 */
+	public boolean hasOffHeapTables() {
+		return offHeap;
+	}
+	
+	/**
+	 * Get the sliding window dictionary.
+	 * @return The window (as searched by the match finder)
+	 */
+	public MatchFinder getWindow() {
+		return window;
 	}
 	
 	/**
 	 * Get the current value of the checksum.
-	 * @return The current CRC value
+	 * @return The current checksum value
 	 */
-	public int getCRCValue() {
-		return crc.getValue();
+	public int getChecksumValue() {
+		return checksum.getValue();
 	}
 }
@@ -0,0 +1,217 @@
+/**
+ * The settings of a deflater: the compression mode, whether LZ77 is used,
+ * the buffer and window sizes, block splitting and debug logging. Options are immutable, so
+ * one set can be shared by any number of deflaters on any threads; each
+ * with...() method returns a copy with one setting changed.
+ * @author Ridge Shrubsall (21112211)
+ */
+public final class DeflaterOptions {
+	/**
+	 * The default options (cheapest block type, LZ77, a 32 KiB buffer, a 256 byte window and block splitting).
+	 */
+	public static final DeflaterOptions DEFAULT = new DeflaterOptions(Deflater.M_CHEAPEST, true, 32768, 256, true, false);
+	
+	/**
+	 * The largest window that DEFLATE can refer back to.
+	 */
+	private static final int MAX_WINDOW = 32768;
+	
+	
+	/**
+	 * The compression mode (one of the Deflater.M_ constants).
+	 */
+	private final int mode;
+	
+	/**
+	 * Whether to search for LZ77 matches.
+	 */
+	private final boolean lz77;
+	
+	/**
+	 * The number of bytes read into the buffer at a time.
+	 */
+	private final int bufferSize;
+	
+	/**
+	 * The size of the sliding window.
+	 */
+	private final int windowSize;
+	
+	/**
+	 * Whether to split dynamic blocks where the statistics change.
+	 */
+	private final boolean split;
+	
+	/**
+	 * Whether to print debug messages.
+	 */
+	private final boolean debug;
+	
+	/**
+	 * Create a new set of options.
+	 * @param mode The compression mode (one of the Deflater.M_ constants)
+	 * @param lz77 Whether to search for LZ77 matches
+	 * @param bufferSize The number of bytes read at a time (1 or more)
+	 * @param windowSize The window size (a power of 2, up to 32768)
+	 * @param split Whether to split dynamic blocks
+	 * @param debug Whether to print debug messages
+	 */
+	private DeflaterOptions(int mode, boolean lz77, int bufferSize, int windowSize, boolean split, boolean debug) {
+		if (mode < Deflater.M_STORED || mode > Deflater.M_CHEAPEST) {
+			throw new IllegalArgumentException("Invalid mode: " + mode);
+		}
+		if (bufferSize < 1) {
+			throw new IllegalArgumentException("Invalid buffer size: " + bufferSize);
+		}
+		if (Integer.bitCount(windowSize) != 1 || windowSize > MAX_WINDOW) {
+			throw new IllegalArgumentException("Invalid window size: " + windowSize);
+		}
+		this.mode = mode;
+		this.lz77 = lz77;
+		this.bufferSize = bufferSize;
+		this.windowSize = windowSize;
+		this.split = split;
+		this.debug = debug;
+	}
+	
+	/**
+	 * Get a copy of these options with a different compression mode.
+	 * @param mode The compression mode (one of the Deflater.M_ constants)
+	 * @return The new options
+	 */
+	public DeflaterOptions withMode(int mode) {
+		return new DeflaterOptions(mode, lz77, bufferSize, windowSize, split, debug);
+	}
+	
+	/**
+	 * Get a copy of these options with LZ77 turned on or off.
+	 * @param lz77 Whether to search for LZ77 matches
+	 * @return The new options
+	 */
+	public DeflaterOptions withLZ77(boolean lz77) {
+		return new DeflaterOptions(mode, lz77, bufferSize, windowSize, split, debug);
+	}
+	
+	/**
+	 * Get a copy of these options with a different buffer size.
+	 * @param bufferSize The number of bytes read at a time (1 or more)
+	 * @return The new options
+	 */
+	public DeflaterOptions withBufferSize(int bufferSize) {
+		return new DeflaterOptions(mode, lz77, bufferSize, windowSize, split, debug);
+	}
+	
+	/**
+	 * Get a copy of these options with a different window size.
+	 * @param windowSize The window size (a power of 2, up to 32768)
+	 * @return The new options
+	 */
+	public DeflaterOptions withWindowSize(int windowSize) {
+		return new DeflaterOptions(mode, lz77, bufferSize, windowSize, split, debug);
+	}
+	
+	/**
+	 * Get a copy of these options with block splitting turned on or off.
+	 * @param split Whether to split dynamic blocks where the statistics change
+	 * @return The new options
+	 */
+	public DeflaterOptions withBlockSplitting(boolean split) {
+		return new DeflaterOptions(mode, lz77, bufferSize, windowSize, split, debug);
+	}
+	
+	/**
+	 * Get a copy of these options with debug messages turned on or off.
+	 * @param debug Whether to print debug messages
+	 * @return The new options
+	 */
+	public DeflaterOptions withDebug(boolean debug) {
+		return new DeflaterOptions(mode, lz77, bufferSize, windowSize, split, debug);
+	}
+	
+	/**
+	 * Get the compression mode.
+	 * @return The mode (one of the Deflater.M_ constants)
+	 */
+	public int getMode() {
+		return mode;
+	}
+	
+	/**
+	 * Check whether LZ77 matches are searched for.
+	 * @return True if LZ77 is used
+	 */
+	public boolean isLZ77() {
+		return lz77;
+	}
+	
+	/**
+	 * Get the number of bytes read into the buffer at a time.
+	 * @return The buffer size
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+	
+	/**
+	 * Get the size of the sliding window.
+	 * @return The window size
+	 */
+	public int getWindowSize() {
+		return windowSize;
+	}
+	
+	/**
+	 * Check whether dynamic blocks are split where the statistics change.
+	 * @return True if splitting
+	 */
+	public boolean isBlockSplitting() {
+		return split;
+	}
+	
+	/**
+	 * Check whether debug messages are printed.
+	 * @return True if debugging
+	 */
+	public boolean isDebug() {
+		return debug;
+	}
+	
+	/**
+	 * Check whether these options have the same buffer and window sizes as
+	 * another set, so that a deflater's buffers fit both.
+	 * @param other The other options
+	 * @return True if the sizes are equal
+	 */
+	public boolean hasSameSizes(DeflaterOptions other) {
+		return bufferSize == other.bufferSize && windowSize == other.windowSize;
+	}
+	
+	/**
+	 * Check whether these options are the same as another set.
+	 * @param o The other object
+	 * @return True if the options are equal
+	 */
+	public boolean equals(Object o) {
+		if (!(o instanceof DeflaterOptions)) return false;
+		DeflaterOptions other = (DeflaterOptions) o;
+		return mode == other.mode && lz77 == other.lz77 && bufferSize == other.bufferSize
+				&& windowSize == other.windowSize && split == other.split && debug == other.debug;
+	}
+	
+	/**
+	 * Get a hash code for these options.
+	 * @return The hash code
+	 */
+	public int hashCode() {
+		return ((mode * 31 + bufferSize) * 31 + windowSize) * 8 + (lz77 ? 4 : 0) + (split ? 2 : 0) + (debug ? 1 : 0);
+	}
+	
+	/**
+	 * Describe these options.
+	 * @return The description
+	 */
+	public String toString() {
+		return String.format("mode %d, LZ77 %s, buffer %d, window %d%s%s",
+				mode, lz77 ? "on" : "off", bufferSize, windowSize, split ? "" : ", no splitting", debug ? ", debug" : "");
+	}
+}
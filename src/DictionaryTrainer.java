@@ -0,0 +1,298 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.text.NumberFormat;
+import java.util.*;
+
+/**
+ * Builds a preset dictionary from a directory of sample payloads.
+ * <p>
+ * Each sample is broken into 8-byte strings, and each string is counted
+ * once for every sample that contains it. The training data is then split
+ * into one epoch per dictionary segment, and the segment in each epoch
+ * whose distinct strings have the highest total count (roughly frequency
+ * times length) is chosen. The strings in a chosen segment no longer count
+ * towards later segments, so repeated content is only taken once. The best
+ * segments are placed at the end of the dictionary, where their distances
+ * are shortest.
+ * @author Ridge Shrubsall (21112211)
+ */
+public class DictionaryTrainer {
+	/*
+	 * The length of the strings that are counted
+	 */
+	private static final int STRING_LENGTH = 8;
+	
+	/*
+	 * The length of each dictionary segment
+	 */
+	private static final int SEGMENT_LENGTH = 64;
+	
+	/*
+	 * The maximum dictionary size (the largest DEFLATE window)
+	 */
+	private static final int MAX_DICT_SIZE = 32768;
+	
+	/*
+	 * Every nth sample is held out of training to measure the dictionary
+	 */
+	private static final int HOLD_OUT = 5;
+	
+	
+	/**
+	 * The training data (all samples joined together).
+	 */
+	private byte[] data;
+	
+	/**
+	 * The end of the sample containing each position.
+	 */
+	private int[] sampleEnd;
+	
+	/**
+	 * The number of samples containing each string.
+	 */
+	private Map<Long, Integer> freq;
+	
+	/**
+	 * Create a new trainer for the given samples.
+	 * @param samples The sample payloads
+	 */
+	public DictionaryTrainer(List<byte[]> samples) {
+		// Join the samples
+		int total = 0;
+		for (byte[] sample : samples) {
+			total += sample.length;
+		}
+		data = new byte[total];
+		sampleEnd = new int[total];
+		int off = 0;
+		for (byte[] sample : samples) {
+			System.arraycopy(sample, 0, data, off, sample.length);
+			Arrays.fill(sampleEnd, off, off + sample.length, off + sample.length);
+			off += sample.length;
+		}
+		
+		// Count the samples containing each string
+		freq = new HashMap<Long, Integer>();
+		off = 0;
+		for (byte[] sample : samples) {
+			Set<Long> seen = new HashSet<Long>();
+			for (int i = off; i + STRING_LENGTH <= off + sample.length; i++) {
+				Long key = key(i);
+				if (seen.add(key)) {
+					Integer count = freq.get(key);
+					freq.put(key, (count == null) ? 1 : count + 1);
+				}
+			}
+			off += sample.length;
+		}
+	}
+	
+	/**
+	 * Get the string starting at the given position.
+	 * @param pos The position in the training data
+	 * @return The string (as a key)
+	 */
+	private long key(int pos) {
+		long key = 0;
+		for (int i = 0; i < STRING_LENGTH; i++) {
+			key = (key << 8) | (data[pos + i] & 0xff);
+		}
+		return key;
+	}
+	
+	/**
+	 * Get the count of the given string.
+	 * @param key The string
+	 * @return The number of samples containing the string
+	 */
+	private int count(long key) {
+		Integer count = freq.get(key);
+		return (count == null) ? 0 : count;
+	}
+	
+	/**
+	 * Build a dictionary of the given size.
+	 * @param size The dictionary size
+	 * @return The dictionary
+	 */
+	public byte[] train(int size) {
+		int numSegments = Math.max(1, size / SEGMENT_LENGTH);
+		int epochSize = Math.max(SEGMENT_LENGTH, data.length / numSegments);
+		
+		// Choose the best segment in each epoch
+		List<int[]> segments = new ArrayList<int[]>();                // {start, score}
+		for (int epoch = 0; epoch + SEGMENT_LENGTH <= data.length; epoch += epochSize) {
+			int[] best = bestSegment(epoch, Math.min(epoch + epochSize, data.length));
+			if (best == null) continue;
+			segments.add(best);
+			
+			// Don't count the chosen strings again
+			for (int i = best[0]; i + STRING_LENGTH <= best[0] + SEGMENT_LENGTH; i++) {
+				freq.remove(key(i));
+			}
+		}
+		
+		// Put the best segments last (closest to the data)
+		Collections.sort(segments, new Comparator<int[]>() {
+			public int compare(int[] s1, int[] s2) {
+				return Integer.compare(s1[1], s2[1]);
+			}
+		});
+		ByteArrayOutputStream dict = new ByteArrayOutputStream();
+		for (int[] segment : segments) {
+			dict.write(data, segment[0], SEGMENT_LENGTH);
+		}
+		byte[] b = dict.toByteArray();
+		if (b.length > size) {
+			b = Arrays.copyOfRange(b, b.length - size, b.length);   // Drop the weakest segments
+		}
+		return b;
+	}
+	
+	/**
+	 * Find the best segment starting in the given range. A segment's score
+	 * is the total count of the distinct strings inside it.
+	 * @param from The first start position
+	 * @param to The end of the range
+	 * @return The segment start and score (or null if none scores)
+	 */
+	private int[] bestSegment(int from, int to) {
+		int[] best = null;
+		Map<Long, Integer> active = new HashMap<Long, Integer>();
+		int score = 0;
+		int start = from;
+		for (int i = from; i < to && i + STRING_LENGTH <= data.length; i++) {
+			// Restart the window at the start of each sample
+			if (sampleEnd[i] != sampleEnd[start]) {
+				active.clear();
+				score = 0;
+				start = i;
+			}
+			if (i + STRING_LENGTH > sampleEnd[i]) continue;
+			
+			// Add the string at 'i' to the window
+			Long key = key(i);
+			Integer n = active.get(key);
+			if (n == null) {
+				score += count(key);
+				n = 0;
+			}
+			active.put(key, n + 1);
+			
+			// Remove the string that fell out of the window
+			if (i - start > SEGMENT_LENGTH - STRING_LENGTH) {
+				Long old = key(i - (SEGMENT_LENGTH - STRING_LENGTH) - 1);
+				int m = active.get(old) - 1;
+				if (m == 0) {
+					active.remove(old);
+					score -= count(old);
+				} else {
+					active.put(old, m);
+				}
+			}
+			
+			// Check the segment ending at 'i'
+			int segStart = i + STRING_LENGTH - SEGMENT_LENGTH;
+			if (segStart >= start && score > 0 && (best == null || score > best[1])) {
+				best = new int[] {segStart, score};
+			}
+		}
+		return best;
+	}
+	
+	/**
+	 * Find the total compressed size of the given samples.
+	 * @param samples The samples
+	 * @param dict The preset dictionary (or null for none)
+	 * @param windowSize The window size (widened to hold the dictionary, if smaller)
+	 * @return The compressed size
+	 */
+	public static long compressedSize(List<byte[]> samples, byte[] dict, int windowSize) {
+		ZLibCompressor zlib = new ZLibCompressor();
+		zlib.setOptions(DeflaterOptions.DEFAULT.withWindowSize(windowSize));
+		zlib.setDictionary(dict);
+		long size = 0;
+		for (byte[] sample : samples) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			zlib.compress(new ByteArrayInputStream(sample), out);
+			size += out.size();
+		}
+		return size;
+	}
+	
+	/**
+	 * Main method to train a dictionary from command line.
+	 * e.g. java DictionaryTrainer samples dict.bin 32768
+	 * will build a 32 KiB dictionary 'dict.bin' from the files in 'samples',
+	 * and report how much it would save on the held-out samples.
+	 */
+	public static void main(String[] args) {
+		// Check number of arguments
+		if (args.length != 2 && args.length != 3) usage();
+		int size = MAX_DICT_SIZE;
+		if (args.length == 3) {
+			size = Integer.parseInt(args[2]);
+			if (size < 1 || size > MAX_DICT_SIZE) usage();
+		}
+		NumberFormat fmt = NumberFormat.getNumberInstance();
+		
+		try {
+			// Read samples, holding out every nth one
+			File[] files = new File(args[0]).listFiles();
+			if (files == null) usage();
+			Arrays.sort(files);
+			List<byte[]> training = new ArrayList<byte[]>();
+			List<byte[]> heldOut = new ArrayList<byte[]>();
+			for (File file : files) {
+				if (!file.isFile()) continue;
+				byte[] sample = Files.readAllBytes(file.toPath());
+				if ((training.size() + heldOut.size()) % HOLD_OUT == HOLD_OUT - 1) {
+					heldOut.add(sample);
+				} else {
+					training.add(sample);
+				}
+			}
+			if (training.isEmpty()) usage();
+			
+			// Train and write the dictionary
+			long startTime = System.currentTimeMillis();
+			byte[] dict = new DictionaryTrainer(training).train(size);
+			long endTime = System.currentTimeMillis();
+			FileOutputStream out = new FileOutputStream(args[1]);
+			out.write(dict);
+			out.close();
+			System.out.println(String.format("Wrote %s byte dictionary from %d samples (ID = %08X)",
+					fmt.format(dict.length), training.size(), ZLibCompressor.adler32(dict)));
+			System.out.println(String.format("Took %.3f seconds", (endTime - startTime) / 1000.0));
+			
+			// Measure the dictionary on the held-out samples
+			if (!heldOut.isEmpty()) {
+				long raw = 0;
+				for (byte[] sample : heldOut) {
+					raw += sample.length;
+				}
+				int windowSize = ZLibCompressor.windowSizeFor(dict);
+				long without = compressedSize(heldOut, null, windowSize);
+				long with = compressedSize(heldOut, dict, windowSize);
+				System.out.println(String.format("Held-out samples: %d (%s bytes, %d byte window)", heldOut.size(), fmt.format(raw), windowSize));
+				System.out.println(String.format("Without dictionary: %s bytes (%.1f%% of original)", fmt.format(without), 100.0 * without / raw));
+				System.out.println(String.format("With dictionary: %s bytes (%.1f%% of original, %.1f%% smaller)",
+						fmt.format(with), 100.0 * with / raw, 100.0 * (without - with) / without));
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Print usage and quit.
+	 */
+	private static void usage() {
+		System.out.println("Usage:");
+		System.out.println("\tjava DictionaryTrainer [sample-dir] [dict-file] [dict-size]");
+		System.out.println("Options:");
+		System.out.println("\tdict-size  the dictionary size (1 to 32768, default 32768)");
+		System.exit(1);
+	}
+}
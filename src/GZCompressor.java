@@ -1,5 +1,6 @@
 import java.io.*;
 import java.text.NumberFormat;
+import java.util.*;
 
 /**
  * Implements the gzip file format for storing DEFLATE-compressed streams.
@@ -29,7 +30,7 @@ public class GZCompressor implements Compressor {
 	/**
 	 * A number formatter for the output log.
 	 */
-	private static NumberFormat fmt = NumberFormat.getNumberInstance();
+	private NumberFormat fmt = NumberFormat.getNumberInstance();
 	
 	/**
 	 * The name of the input file.
@@ -37,45 +38,122 @@ public class GZCompressor implements Compressor {
 	private String fileName;
 	
 	/**
-	 * The size of the input file.
+	 * The size of the input file (or -1 if unknown).
 	 */
 	private long fileSize;
 	
 	/**
-	 * Show percentage progress.
+	 * The listener for progress reports (or null if none).
 	 */
-	private boolean showProgress;
+	private ProgressListener listener;
 	
 	/**
-	 * The last percentage calculated.
+	 * The compression strategy.
 	 */
-	private long lastPercent;
+	private int strategy;
+	
+	/**
+	 * The match finder.
+	 */
+	private int finder;
+	
+	/**
+	 * The deflater options.
+	 */
+	private DeflaterOptions options;
+	
+	/**
+	 * Whether to keep the match finder's tables off the heap.
+	 */
+	private boolean offHeap;
+	
+	/**
+	 * The pool that deflaters and inflaters are taken from.
+	 */
+	private CodecPool pool;
 	
 	/**
 	 * Create a new GZCompressor.
 	 * @param fileName The input filename
-	 * @param fileSize The input filesize
-	 * @param showProgress Show progress
+	 * @param fileSize The input filesize (or -1 if unknown)
+	 * @param showProgress Print progress to the console
 	 */
 	public GZCompressor(String fileName, long fileSize, boolean showProgress) {
 		this.fileName = fileName;
 		this.fileSize = fileSize;
-		this.showProgress = showProgress;
-		lastPercent = -1;
+		listener = showProgress ? GZCompressor::printProgress : null;
+		strategy = Deflater.S_DEFAULT;
+		finder = Deflater.F_LINEAR;
+		options = DeflaterOptions.DEFAULT;
+		pool = CodecPool.getDefault();
 	}
 	
 	/**
-	 * Update the progress of the current task.
-	 * @param read The number of bytes processed so far
+	 * Set the compression strategy.
+	 * @param strategy The strategy (one of the Deflater.S_ constants)
 	 */
-	public void updateProgress(long read) {
-		if (showProgress) {
-			long percent = read * 100 / fileSize;
-			if (percent != lastPercent) {
-				System.out.println(String.format("%d%%", percent));
-				lastPercent = percent;
-			}
+	public void setStrategy(int strategy) {
+		this.strategy = strategy;
+	}
+	
+	/**
+	 * Set the match finder.
+	 * @param finder The match finder (one of the Deflater.F_ constants)
+	 */
+	public void setMatchFinder(int finder) {
+		this.finder = finder;
+	}
+	
+	/**
+	 * Set the deflater options (the compression mode, buffer and window sizes).
+	 * @param options The options
+	 */
+	public void setOptions(DeflaterOptions options) {
+		this.options = options;
+	}
+	
+	/**
+	 * Keep the match finder's tables off the heap, in memory that is freed
+	 * as soon as each stream is compressed (when the Foreign Memory API is
+	 * available).
+	 * @param offHeap True to use off-heap tables
+	 */
+	public void setOffHeap(boolean offHeap) {
+		this.offHeap = offHeap;
+	}
+	
+	/**
+	 * Set the pool that deflaters and inflaters are taken from. Deflaters
+	 * with off-heap tables are never pooled, as their tables are freed.
+	 * @param pool The pool
+	 */
+	public void setCodecPool(CodecPool pool) {
+		this.pool = pool;
+	}
+	
+	/**
+	 * Set the listener for progress reports.
+	 * @param listener The listener (or null for none)
+	 */
+	public void setProgressListener(ProgressListener listener) {
+		this.listener = listener;
+	}
+	
+	/**
+	 * Print a progress report to the console.
+	 * @param bytesIn The number of bytes read so far
+	 * @param bytesOut The number of bytes written so far
+	 * @param total The size of the input (or -1 if unknown)
+	 * @param rate The speed so far (in MB/s of input)
+	 * @param eta The estimated time left (in ms, or -1 if unknown)
+	 */
+	private static void printProgress(long bytesIn, long bytesOut, long total, double rate, long eta) {
+		NumberFormat fmt = NumberFormat.getNumberInstance();         // Not thread-safe, so not shared
+		String line = String.format("%s bytes in, %s bytes out, %.1f MB/s", fmt.format(bytesIn), fmt.format(bytesOut), rate);
+		if (total > 0) {
+			line = String.format("%d%% (%s, %.1f seconds left)", bytesIn * 100 / total, line, eta / 1000.0);
 		}
+		System.out.println(line);
 	}
 	
 	/**
@@ -84,11 +162,11 @@ public class GZCompressor implements Compressor {
 	 * the compressed data to the specified output stream.
 	 * @param in The input stream for the data
 	 * @param out The output stream for writing the compressed data
-	 * @return A string reporting information to be logged
+	 * @return The statistics for the stream (with the information to be logged)
 	 */
-	public String compress(InputStream in, OutputStream out) {
+	public CompressionStats compress(InputStream in, OutputStream out) {
 		log = new StringBuffer();
-		System.out.println(String.format("Compressing %s (%s bytes)", fileName, fmt.format(fileSize)));
+		CompressionStats stats = new CompressionStats();
 		
 		BitInputStream input = new BitInputStream(in);
 		BitOutputStream output = new BitOutputStream(out);
@@ -106,27 +184,58 @@ public class GZCompressor implements Compressor {
 			output.write(fileName.getBytes());
 			output.writeByte(0);
 			
-			// Compress and write data
-			Deflater deflater = new Deflater(this, input, output);
-			long size = deflater.process() + 8;
+			// Compress and write data (freeing off-heap tables straight after)
+			ProgressMeter progress = (listener != null) ? new ProgressMeter(listener, fileSize) : null;
+			Deflater deflater;
+			long size;
+			boolean tablesOffHeap = false;
+			if (offHeap) {
+				deflater = new Deflater(progress, input, output, strategy, options);
+				try (TableAllocator tables = TableAllocator.offHeap()) {
+					deflater.setMatchFinder(finder, tables);
+					size = deflater.process() + 8;
+					tablesOffHeap = tables.isOffHeap();
+				}
+			} else {
+				deflater = pool.takeDeflater(progress, input, output, strategy, finder, options);
+				size = deflater.process() + 8;
+			}
 			
 			// Write footer
-			output.writeInt(deflater.getCRCValue());
-			output.writeUnsignedInt(fileSize);
+			long inSize = input.getCount();
+			output.writeInt(deflater.getChecksumValue());
+			output.writeUnsignedInt(inSize);                     // Size modulo 2^32
+			if (progress != null) {
+				progress.finish(inSize, output.getCount());
+			}
+			stats = deflater.getStats();
+			stats.setSizes(inSize, size);
 			
 			// Log statistics
-			long diff = fileSize - size;
-			double ratio = (1 - ((double) size / fileSize)) * 100;
+			long diff = inSize - size;
+			double ratio = (1 - ((double) size / inSize)) * 100;
 			if (diff > 0) {
 				log.append(String.format("Size reduced by %s bytes (%.1f%% total saving)", fmt.format(diff), ratio));
 			} else {
 				log.append(String.format("Size increased by %s bytes", fmt.format(-diff)));
 			}
+			long huffmanOnly = deflater.getPolicyBytes(1);
+			long stored = deflater.getPolicyBytes(2);
+			if (huffmanOnly > 0 || stored > 0) {
+				log.append(String.format("%nIncompressible data: %s bytes stored, %s bytes Huffman only",
+						fmt.format(stored), fmt.format(huffmanOnly)));
+			}
+			if (offHeap) {
+				log.append(String.format("%nMatch finder tables were %s", tablesOffHeap ? "off heap" : "on heap (Foreign Memory API not available)"));
+			} else {
+				pool.giveBack(deflater);
+			}
 		} catch (Exception e) {
 			e.printStackTrace();
 			System.exit(1);
 		}
-		return log.toString();
+		stats.setLog(log.toString());
+		return stats;
 	}
 	
 	/**
@@ -135,11 +244,11 @@ public class GZCompressor implements Compressor {
 	 * the decompressed data to the specified output stream.
 	 * @param in The input stream for the compressed data
 	 * @param out The output stream for writing the decompressed data
-	 * @return A string reporting information to be logged
+	 * @return The statistics for the stream (with the information to be logged)
 	 */
-	public String decompress(InputStream in, OutputStream out) {
+	public CompressionStats decompress(InputStream in, OutputStream out) {
 		log = new StringBuffer();
-		System.out.println(String.format("Decompressing %s (%s bytes)", fileName, fmt.format(fileSize)));
+		CompressionStats stats = new CompressionStats();
 		
 		BitInputStream input = new BitInputStream(in);
 		BitOutputStream output = new BitOutputStream(out);
@@ -169,26 +278,33 @@ public class GZCompressor implements Compressor {
 			}
 			
 			// Read and decompress data
-			Inflater inflater = new Inflater(this, input, output);
+			ProgressMeter progress = (listener != null) ? new ProgressMeter(listener, fileSize) : null;
+			Inflater inflater = pool.takeInflater(progress, input, output);
 			long size = inflater.process();
 			
 			// Read footer
 			int f_crc = input.readInt();
 			long f_size = input.readUnsignedInt();
-			updateProgress(input.getCount());
+			long inSize = input.getCount();
+			if (progress != null) {
+				progress.finish(inSize, size);
+			}
+			stats = inflater.getStats();
+			stats.setSizes(inSize, size);
 			
 			// Verify data
-			if (size != f_size) {
+			if ((size & 0xffffffffL) != f_size) {
 				throw new AssertionError(String.format("Size mismatch, expected = %d, actual = %d", f_size, size));
 			}
-			int crc = inflater.getCRCValue();
+			int crc = inflater.getChecksumValue();
 			if (crc != f_crc) {
 				throw new AssertionError(String.format("CRC mismatch, expected = %08X, actual = %08X", f_crc, crc));
 			}
+			pool.giveBack(inflater);
 			
 			// Log statistics
-			long diff = size - fileSize;
-			double ratio = (1 - ((double) fileSize / size)) * 100;
+			long diff = size - inSize;
+			double ratio = (1 - ((double) inSize / size)) * 100;
 			if (diff > 0) {
 				log.append(String.format("Size increased by %s bytes (%.1f%% space saving)", fmt.format(diff), ratio));
 			} else {
@@ -198,12 +314,16 @@ public class GZCompressor implements Compressor {
 			e.printStackTrace();
 			System.exit(1);
 		}
-		return log.toString();
+		stats.setLog(log.toString());
+		return stats;
 	}
 	
 	/**
 	 * Main method to compress/decompress from command line.
 	 * Options are 'c' to compress, 'd' to decompress, 'v' for verbose,
+	 * 'o' for off-heap match finder tables,
+	 * optionally followed by '-s' and a compression strategy and/or
+	 * '-f' and a match finder,
 	 * followed by the names of the input and output files.
 	 * e.g. java GZCompressor -vc file.txt file.gz
 	 * will create a compressed file 'file.gz' corresponding to 'file.txt'
@@ -211,31 +331,54 @@ public class GZCompressor implements Compressor {
 	 */
 	public static void main(String[] args) {
 		// Check number of arguments
-		if (args.length != 3) usage();
+		if (args.length < 3 || args.length % 2 == 0) usage();
 		
 		// Parse flags
 		boolean verbose = args[0].contains("v");
 		boolean showProgress = args[0].contains("p");
 		boolean compress = args[0].contains("c");
 		boolean decompress = args[0].contains("d");
+		boolean offHeap = args[0].contains("o");
 		if (!(compress ^ decompress)) usage();
 		
+		// Parse strategy and match finder
+		int strategy = Deflater.S_DEFAULT;
+		int finder = Deflater.F_LINEAR;
+		for (int i = 1; i < args.length - 2; i += 2) {
+			if (args[i].equals("-s")) {
+				strategy = Arrays.asList("default", "filtered", "huffman", "rle", "fixed", "optimal").indexOf(args[i + 1]);
+				if (strategy == -1) usage();
+			} else if (args[i].equals("-f")) {
+				finder = Arrays.asList("linear", "chain", "tree").indexOf(args[i + 1]);
+				if (finder == -1) usage();
+			} else {
+				usage();
+			}
+		}
+		String inName = args[args.length - 2];
+		String outName = args[args.length - 1];
+		
 		try {
 			// Open streams
-			File inFile = new File(args[1]);
+			File inFile = new File(inName);
 			FileInputStream in = new FileInputStream(inFile);
-			File outFile = new File(args[2]);
+			File outFile = new File(outName);
 			FileOutputStream out = new FileOutputStream(outFile);
 			
 			// Create compressor instance
 			GZCompressor gz = new GZCompressor(inFile.getName(), inFile.length(), showProgress);
-			String info;
+			gz.setStrategy(strategy);
+			gz.setMatchFinder(finder);
+			gz.setOffHeap(offHeap);
+			CompressionStats info;
 			
 			// Perform compression/decompression
 			long startTime = System.currentTimeMillis();
 			if (compress) {
+				System.out.println(String.format("Compressing %s (%s bytes)", inFile.getName(), gz.fmt.format(inFile.length())));
 				info = gz.compress(in, out);
 			} else {
+				System.out.println(String.format("Decompressing %s (%s bytes)", inFile.getName(), gz.fmt.format(inFile.length())));
 				info = gz.decompress(in, out);
 			}
 			long endTime = System.currentTimeMillis();
@@ -260,12 +403,15 @@ public class GZCompressor implements Compressor {
 	 */
 	private static void usage() {
 		System.out.println("Usage:");
-		System.out.println("\tjava GZCompressor -vpcd [in-file] [out-file]");
+		System.out.println("\tjava GZCompressor -vpcdo [-s strategy] [-f finder] [in-file] [out-file]");
 		System.out.println("Options:");
 		System.out.println("\t-v  verbose mode");
-		System.out.println("\t-p  show progress");
+		System.out.println("\t-p  show progress (once a second)");
 		System.out.println("\t-c  compress");
 		System.out.println("\t-d  decompress");
+		System.out.println("\t-o  off-heap match finder tables");
+		System.out.println("\t-s  compression strategy (default, filtered, huffman, rle, fixed or optimal)");
+		System.out.println("\t-f  match finder (linear, chain or tree)");
 		System.exit(1);
 	}
 }
@@ -0,0 +1,113 @@
+/**
+ * Finds matches through hash chains: each position is linked to the last
+ * position whose first three bytes had the same hash, and a search follows
+ * the links back through the window.
+ * @author Ridge Shrubsall (21112211)
+ */
+public class HashChainFinder extends HistoryFinder {
+	/**
+	 * The number of bits in the hash.
+	 */
+	private static final int HASH_BITS = 15;
+	
+	/**
+	 * The most links followed by a search.
+	 */
+	private static final int MAX_CHAIN = 1024;
+	
+	
+	/**
+	 * The last position with each hash (or -1 if none).
+	 */
+	private IntTable head;
+	
+	/**
+	 * The previous position with the same hash as each position.
+	 */
+	private IntTable prev;
+	
+	/**
+	 * The arrays behind the tables when they are on the heap (or null if off-heap).
+	 */
+	private int[] headArray;
+	private int[] prevArray;
+	
+	/**
+	 * Create a new finder, with its tables on the heap.
+	 * @param s The window size (a power of 2)
+	 */
+	public HashChainFinder(int s) {
+		this(s, new TableAllocator());
+	}
+	
+	/**
+	 * Create a new finder.
+	 * @param s The window size (a power of 2)
+	 * @param tables The allocator for the finder's tables
+	 */
+	public HashChainFinder(int s, TableAllocator tables) {
+		super(s);
+		head = tables.allocate(1 << HASH_BITS, -1);
+		prev = tables.allocate(2 * s, -1);
+		headArray = TableAllocator.arrayOf(head);
+		prevArray = TableAllocator.arrayOf(prev);
+	}
+	
+	/**
+	 * Index a position, finding its matches if requested.
+	 * @param pos The position
+	 * @param dists The array to store the distances in (or null)
+	 * @param lens The array to store the lengths in (or null)
+	 * @return The number of matches found
+	 */
+	protected int insert(int pos, int[] dists, int[] lens) {
+		int h = hash(pos, HASH_BITS);
+		int cur;
+		if (headArray != null) {
+			cur = headArray[h];
+			prevArray[pos & mask] = cur;
+			headArray[h] = pos;
+		} else {
+			cur = head.get(h);
+			prev.set(pos & mask, cur);
+			head.set(h, pos);
+		}
+		if (dists == null) return 0;
+		
+		// Follow the chain back through the window
+		int limit = Math.min(MAX_MATCH, available(pos));
+		int oldest = Math.max(0, oldest());
+		int n = 0;
+		int longest = MIN_MATCH - 1;
+		for (int chain = 0; cur >= oldest && chain < MAX_CHAIN; chain++) {
+			if (byteAt(cur + longest) == byteAt(pos + longest)) {  // Skip candidates that can't be longer
+				int len = matchLength(cur, pos, 0, limit);
+				if (len > longest) {
+					dists[n] = pos - cur;
+					lens[n] = len;
+					n++;
+					longest = len;
+					if (len == limit) break;
+				}
+			}
+			cur = (prevArray != null) ? prevArray[cur & mask] : prev.get(cur & mask);
+		}
+		return n;
+	}
+	
+	/**
+	 * Subtract the given amount from every stored position,
+	 * dropping positions that would become negative.
+	 * @param shift The amount to subtract
+	 */
+	protected void rebase(int shift) {
+		for (int i = 0; i < head.size(); i++) {
+			int p = head.get(i);
+			head.set(i, (p < shift) ? -1 : p - shift);
+		}
+		for (int i = 0; i < prev.size(); i++) {
+			int p = prev.get(i);
+			prev.set(i, (p < shift) ? -1 : p - shift);
+		}
+	}
+}
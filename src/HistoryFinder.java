@@ -0,0 +1,250 @@
+/**
+ * A match finder that indexes each position of its history. Positions are
+ * indexed lazily: added bytes are only indexed at the next search, when the
+ * lookahead that follows them is known. Positions are only linked to others
+ * in the last window before the search, which is all the data array holds.
+ * @author Ridge Shrubsall (21112211)
+ */
+public abstract class HistoryFinder implements MatchFinder {
+	/**
+	 * The minimum match length.
+	 */
+	protected static final int MIN_MATCH = 3;
+	
+	/**
+	 * The maximum match length.
+	 */
+	protected static final int MAX_MATCH = 258;
+	
+	/**
+	 * The position at which positions are rebased to zero
+	 * (so that they never overflow).
+	 */
+	private static final int REBASE_LIMIT = 1 << 30;
+	
+	/**
+	 * The kernels used to measure matches.
+	 */
+	private static final Kernels KERNELS = Kernels.get();
+	
+	
+	/**
+	 * The maximum match distance.
+	 */
+	protected int windowSize;
+	
+	/**
+	 * The mask for the index of each position (which covers two windows,
+	 * so that the positions in the last window never share a slot).
+	 */
+	protected int mask;
+	
+	/**
+	 * The position of the next byte to be added.
+	 */
+	private int total;
+	
+	/**
+	 * The first position that hasn't been indexed.
+	 */
+	private int indexed;
+	
+	/**
+	 * The data array for the current search, and the offsets
+	 * of the current position and the end of the data.
+	 */
+	private byte[] data;
+	private int dataOff;
+	private int dataEnd;
+	
+	/**
+	 * The matches found by find() (kept to avoid allocating them for each search).
+	 */
+	private int[] findDists;
+	private int[] findLens;
+	
+	/**
+	 * The number of searches made.
+	 */
+	private long numSearches;
+	
+	/**
+	 * Create a new finder.
+	 * @param s The window size (a power of 2)
+	 */
+	public HistoryFinder(int s) {
+		if (Integer.bitCount(s) != 1) {
+			throw new AssertionError("Window size must be a power of 2");
+		}
+		windowSize = s;
+		mask = 2 * s - 1;
+		total = 0;
+		indexed = 0;
+		findDists = new int[MAX_MATCH];
+		findLens = new int[MAX_MATCH];
+	}
+	
+	/**
+	 * Add the next bytes to the history.
+	 * @param len The number of bytes
+	 */
+	public void add(int len) {
+		total += len;
+	}
+	
+	/**
+	 * Find the longest previous match of at least the given length.
+	 * @param buffer The data array
+	 * @param off The starting offset
+	 * @param len The number of bytes
+	 * @param minLength The minimum match length
+	 * @return A distance/length pair (or null if none)
+	 */
+	public LZPair find(byte[] buffer, int off, int len, int minLength) {
+		int n = findAll(buffer, off, len, findDists, findLens);
+		if (n == 0 || findLens[n - 1] < minLength) return null;
+		return new LZPair(findDists[n - 1], findLens[n - 1]);
+	}
+	
+	/**
+	 * Find the previous matches for the given bytes, each one longer than
+	 * the last and at a greater distance. This indexes the current position,
+	 * so it must be called at most once for each position.
+	 * @param buffer The data array
+	 * @param off The starting offset
+	 * @param len The number of bytes
+	 * @param dists The array to store the distances in
+	 * @param lens The array to store the lengths in
+	 * @return The number of matches found
+	 */
+	public int findAll(byte[] buffer, int off, int len, int[] dists, int[] lens) {
+		numSearches++;
+		data = buffer;
+		dataOff = off;
+		dataEnd = len;
+		if (total >= REBASE_LIMIT) {
+			int shift = (total - 2 * windowSize) & ~mask;           // Keep positions in the same slots
+			total -= shift;
+			indexed -= shift;
+			rebase(shift);
+		}
+		
+		// Index the positions added since the last search (up to a window back)
+		indexed = Math.max(indexed, total - windowSize);
+		while (indexed < total) {
+			if (available(indexed) >= MIN_MATCH) {
+				insert(indexed, null, null);
+			}
+			indexed++;
+		}
+		
+		// Index and search the current position
+		indexed = total + 1;
+		if (available(total) < MIN_MATCH) return 0;
+		return insert(total, dists, lens);
+	}
+	
+	/**
+	 * Index a position, finding its matches if requested.
+	 * @param pos The position
+	 * @param dists The array to store the distances in (or null)
+	 * @param lens The array to store the lengths in (or null)
+	 * @return The number of matches found
+	 */
+	protected abstract int insert(int pos, int[] dists, int[] lens);
+	
+	/**
+	 * Subtract the given amount from every stored position,
+	 * dropping positions that would become negative.
+	 * @param shift The amount to subtract
+	 */
+	protected abstract void rebase(int shift);
+	
+	/**
+	 * Get a byte from the data array.
+	 * @param pos The position of the byte
+	 * @return The byte value
+	 */
+	protected final int byteAt(int pos) {
+		return data[dataOff + pos - total] & 0xff;
+	}
+	
+	/**
+	 * Get the length of the match between two positions.
+	 * @param cur The earlier position
+	 * @param pos The later position
+	 * @param len The length already known to match
+	 * @param limit The maximum length
+	 * @return The match length
+	 */
+	protected final int matchLength(int cur, int pos, int len, int limit) {
+		int base = dataOff - total;
+		return len + KERNELS.matchLength(data, base + cur + len, base + pos + len, limit - len);
+	}
+	
+	/**
+	 * Get the number of bytes available from a position.
+	 * @param pos The position
+	 * @return The byte count
+	 */
+	protected final int available(int pos) {
+		return total - pos + dataEnd - dataOff;
+	}
+	
+	/**
+	 * Get the oldest position that can be linked to.
+	 * @return The position
+	 */
+	protected final int oldest() {
+		return total - windowSize;
+	}
+	
+	/**
+	 * Get the hash of the three bytes at a position.
+	 * @param pos The position
+	 * @param bits The number of bits in the hash
+	 * @return The hash value
+	 */
+	protected final int hash(int pos, int bits) {
+		int h = (byteAt(pos) << 16) | (byteAt(pos + 1) << 8) | byteAt(pos + 2);
+		return (h * 0x9e3779b1) >>> (32 - bits);
+	}
+	
+	/**
+	 * Forget the history and the search counts, keeping the finder's
+	 * tables, so that it can be used for a new stream.
+	 */
+	public void reset() {
+		rebase(Integer.MAX_VALUE);                                   // Drop every stored position
+		total = 0;
+		indexed = 0;
+		data = null;
+		numSearches = 0;
+	}
+	
+	/**
+	 * Get the number of searches made.
+	 * @return The search count
+	 */
+	public long getSearchCount() {
+		return numSearches;
+	}
+	
+	/**
+	 * Get the number of matches taken from a recent distance. This finder
+	 * doesn't try recent distances first, so there are none.
+	 * @return The hit count (0)
+	 */
+	public long getRecentHits() {
+		return 0;
+	}
+	
+	/**
+	 * Get the number of searches ended early by a long match
+	 * at a recent distance (none, as for getRecentHits).
+	 * @return The early hit count (0)
+	 */
+	public long getRecentEarlyHits() {
+		return 0;
+	}
+}
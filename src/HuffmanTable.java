@@ -26,87 +26,206 @@ public class HuffmanTable {
 	
 	
 	/**
-	 * Pack the given codelength arrays.
+	 * Pack the given codelength arrays, sending only the used codes.
+	 * (see RFC 1951, section 3.2.7)
 	 * @param litCodeLen The literal codelengths
+	 * @param numLit The number of literal codelengths to send
 	 * @param distCodeLen The distance codelengths
+	 * @param numDist The number of distance codelengths to send
+	 * @param lenCodeLen The length codelengths used to price each run,
+	 *                   or null to pack each run greedily
 	 * @return The packed codelengths
 	 */
-	public static List<Integer> packCodeLengths(int[] litCodeLen, int[] distCodeLen) {
+	public static List<Integer> packCodeLengths(int[] litCodeLen, int numLit, int[] distCodeLen, int numDist, int[] lenCodeLen) {
+		// Join the codelengths (runs may cross from literals into distances)
+		int[] codeLen = new int[numLit + numDist];
+		System.arraycopy(litCodeLen, 0, codeLen, 0, numLit);
+		System.arraycopy(distCodeLen, 0, codeLen, numLit, numDist);
+		
 		List<Integer> lengths = new ArrayList<Integer>();
-		pack(lengths, litCodeLen);
-		pack(lengths, distCodeLen);
+		int n = codeLen.length;
+		int i = 0;
+		while (i < n) {
+			int last = codeLen[i];                     // Find the number of repeat occurrences
+			int runLength = 1;
+			while (i + runLength < n && codeLen[i + runLength] == last) {
+				runLength++;
+			}
+			if (lenCodeLen == null) {
+				pack(lengths, last, runLength);
+			} else {
+				packPriced(lengths, last, runLength, lenCodeLen);
+			}
+			i += runLength;
+		}
 		return lengths;
 	}
 	
 	/**
-	 * Pack an array of codelengths.
-	 * (see RFC 1951, section 3.2.7)
+	 * Pack a run of equal codelengths greedily, using the longest
+	 * repeat codes first.
 	 * @param lengths The list of length symbols
-	 * @param codeLen The codelengths to be packed
+	 * @param last The repeated codelength
+	 * @param runLength The length of the run
 	 */
-	private static void pack(List<Integer> lengths, int[] codeLen) {
-		int n = codeLen.length;
+	private static void pack(List<Integer> lengths, int last, int runLength) {
+		lengths.add(last);                             // Write the length value
+		runLength--;
+		if (last == 0) {                               // Is the length zero/unused?
+			int j = 138;
+			while (j >= 11) {
+				if ((runLength - j) >= 0) {            // Encode 11 to 138 repeats of zero
+					lengths.add(18);
+					lengths.add(j - 11);
+					runLength -= j;
+				} else {
+					j--;
+				}
+			}
+			while (j >= 3) {
+				if ((runLength - j) >= 0) {            // Encode 3 to 10 repeats of zero
+					lengths.add(17);
+					lengths.add(j - 3);
+					runLength -= j;
+				} else {
+					j--;
+				}
+			}
+		} else {
+			int j = 6;
+			while (j >= 3) {
+				if ((runLength - j) >= 0) {            // Encode 3 to 6 repeat lengths
+					lengths.add(16);
+					lengths.add(j - 3);
+					runLength -= j;
+				} else {
+					j--;
+				}
+			}
+		}
+		while (runLength > 0) {                        // Write the remaining length(s)
+			lengths.add(last);
+			runLength--;
+		}
+	}
+	
+	/**
+	 * Pack a run of equal codelengths, choosing the mix of plain lengths
+	 * and repeat codes with the lowest cost under the given length codes.
+	 * @param lengths The list of length symbols
+	 * @param last The repeated codelength
+	 * @param runLength The length of the run
+	 * @param lenCodeLen The length codelengths
+	 */
+	private static void packPriced(List<Integer> lengths, int last, int runLength, int[] lenCodeLen) {
+		// A non-zero run must start with a plain length for code 16 to repeat
+		int first = 0;
+		if (last != 0) {
+			lengths.add(last);
+			first = 1;
+		}
+		int n = runLength - first;
 		
-		// Perform a run-length encoding
-		int last = codeLen[0];                         // Get the first length value
-		int runLength = 1;
-		for (int i = 1; i <= n; i++) {
-			if (i < n && codeLen[i] == last) {         // Find the number of repeat occurrences
-				runLength++;
-			} else {
-				lengths.add(last);                     // Write the length value
-				runLength--;
-				if (last == 0) {                       // Is the length zero/unused?
-					int j = 138;
-					while (j >= 11) {
-						if ((runLength - j) >= 0) {    // Encode 11 to 138 repeats of zero
-							lengths.add(18);
-							lengths.add(j - 11);
-							runLength -= j;
-						} else {
-							j--;
-						}
-					}
-					while (j >= 3) {
-						if ((runLength - j) >= 0) {    // Encode 3 to 10 repeats of zero
-							lengths.add(17);
-							lengths.add(j - 3);
-							runLength -= j;
-						} else {
-							j--;
-						}
+		// Find the cheapest encoding of the first 'k' repeats
+		int[] cost = new int[n + 1];
+		int[] step = new int[n + 1];
+		for (int k = 1; k <= n; k++) {
+			cost[k] = price(lenCodeLen, last) + cost[k - 1];           // Plain length
+			step[k] = 1;
+			if (last == 0) {
+				for (int j = 3; j <= Math.min(k, 138); j++) {
+					int c = cost[k - j];
+					if (j <= 10) {
+						c += price(lenCodeLen, 17) + 3;                // 3 to 10 repeats of zero
+					} else {
+						c += price(lenCodeLen, 18) + 7;                // 11 to 138 repeats of zero
 					}
-				} else {
-					int j = 6;
-					while (j >= 3) {
-						if ((runLength - j) >= 0) {    // Encode 3 to 6 repeat lengths
-							lengths.add(16);
-							lengths.add(j - 3);
-							runLength -= j;
-						} else {
-							j--;
-						}
+					if (c < cost[k]) {
+						cost[k] = c;
+						step[k] = j;
 					}
 				}
-				while (runLength > 0) {                // Write the remaining length(s)
-					lengths.add(last);
-					runLength--;
-				}
-				if (i < n) {                           // Get the next length value
-					last = codeLen[i];
-					runLength = 1;
+			} else {
+				for (int j = 3; j <= Math.min(k, 6); j++) {
+					int c = cost[k - j] + price(lenCodeLen, 16) + 2;   // 3 to 6 repeat lengths
+					if (c < cost[k]) {
+						cost[k] = c;
+						step[k] = j;
+					}
 				}
 			}
 		}
+		
+		// Walk back through the chosen steps, then write them in order
+		int[] steps = new int[n];
+		int numSteps = 0;
+		for (int k = n; k > 0; k -= step[k]) {
+			steps[numSteps++] = step[k];
+		}
+		for (int i = numSteps - 1; i >= 0; i--) {
+			int j = steps[i];
+			if (j == 1) {
+				lengths.add(last);
+			} else if (last != 0) {
+				lengths.add(16);
+				lengths.add(j - 3);
+			} else if (j <= 10) {
+				lengths.add(17);
+				lengths.add(j - 3);
+			} else {
+				lengths.add(18);
+				lengths.add(j - 11);
+			}
+		}
+	}
+	
+	/**
+	 * Get the cost of a length symbol. Symbols that have no code are
+	 * given a high cost so that they are never chosen.
+	 * @param lenCodeLen The length codelengths
+	 * @param s The length symbol
+	 * @return The cost in bits
+	 */
+	private static int price(int[] lenCodeLen, int s) {
+		return (lenCodeLen[s] > 0) ? lenCodeLen[s] : 1000;
+	}
+	
+	
+	/**
+	 * Get a copy of the fixed literal/length codes.
+	 * @return The code table
+	 */
+	public static HuffmanTable fixedLiterals() {
+		return LIT.copy();
+	}
+	
+	/**
+	 * Get a copy of the fixed distance codes.
+	 * @return The code table
+	 */
+	public static HuffmanTable fixedDistances() {
+		return DIST.copy();
+	}
+	
+	/**
+	 * Copy this table.
+	 * @return The copy
+	 */
+	public HuffmanTable copy() {
+		HuffmanTable t = new HuffmanTable(code.length);
+		System.arraycopy(code, 0, t.code, 0, code.length);
+		System.arraycopy(codeLen, 0, t.codeLen, 0, codeLen.length);
+		return t;
 	}
 	
 	
 	/*
 	 * Default Huffman code tables
-	 * (see RFC 1951, section 3.2.6)
+	 * (see RFC 1951, section 3.2.6), kept private so that they can't be
+	 * changed: callers get their own copies
 	 */
-	public static final HuffmanTable LIT;
-	public static final HuffmanTable DIST;
+	private static final HuffmanTable LIT;
+	private static final HuffmanTable DIST;
 	static {
 		// Generate fixed literal codes
 		LIT = new HuffmanTable(286);
@@ -9,7 +9,7 @@ public class Inflater {
 	/*
 	 * Debug logging
 	 */
-	private static boolean DEBUG = false;
+	private static final boolean DEBUG = false;
 	
 	/*
 	 * Constant values
@@ -22,12 +22,13 @@ public class Inflater {
 	private static final int N_DISTANCES = 30;
 	private static final int N_LENGTHS = 19;
 	private static final int WINDOW_SIZE = 32768;
+	private static final int PENDING_SIZE = 8192;
 	
 	
 	/**
-	 * The compressor instance.
+	 * The progress meter (or null if none).
 	 */
-	private GZCompressor gz;
+	private ProgressMeter progress;
 	
 	/**
 	 * The base input stream.
@@ -40,15 +41,31 @@ public class Inflater {
 	private BitOutputStream out;
 	
 	/**
-	 * The current checksum.
+	 * The current checksum, and this inflater's own CRC-32 and Adler-32
+	 * (the Adler-32 is created when first used).
 	 */
-	private CRC32 crc;
+	private Checksum checksum;
+	private CRC32 crc32;
+	private Adler32 adler32;
+	
+	/**
+	 * The decoded bytes not yet added to the checksum. Huffman blocks add
+	 * them in bulk, so that the checksum is timed on its own.
+	 */
+	private byte[] pending;
+	private int pendingLen;
 	
 	/**
 	 * The sliding window dictionary.
 	 */
 	private LZWindow window;
 	
+	/**
+	 * The fixed Huffman codes (this inflater's own copy).
+	 */
+	private HuffmanTable fixedLit;
+	private HuffmanTable fixedDist;
+	
 	/**
 	 * The current set of literal codes.
 	 */
@@ -67,18 +84,88 @@ public class Inflater {
 	private List<Integer> lenCodes;
 	private Map<Integer, List<Integer>> lenCodeMap;
 	
+	/**
+	 * The statistics for the stream.
+	 */
+	private CompressionStats stats;
+	
+	/**
+	 * The flight recorder event for the current block.
+	 */
+	private BlockEvent blockEvent;
+	
 	/**
 	 * Create a new Inflater.
-	 * @param gz The compressor instance
+	 * @param progress The progress meter (or null if none)
 	 * @param in The input stream
 	 * @param out The output stream
 	 */
-	public Inflater(GZCompressor gz, BitInputStream in, BitOutputStream out) {
-		this.gz = gz;
+	public Inflater(ProgressMeter progress, BitInputStream in, BitOutputStream out) {
+		this.progress = progress;
 		this.in = in;
 		this.out = out;
-		crc = new CRC32();
+		crc32 = new CRC32();
+		checksum = crc32;
+		pending = new byte[PENDING_SIZE];
 		window = new LZWindow(WINDOW_SIZE);
+		fixedLit = HuffmanTable.fixedLiterals();
+		fixedDist = HuffmanTable.fixedDistances();
+		stats = new CompressionStats();
+		blockEvent = new BlockEvent();
+	}
+	
+	/**
+	 * Reset the inflater to process a new stream, keeping its window buffer.
+	 * The checksum goes back to CRC-32, the window is emptied, and new
+	 * statistics are started (the statistics for the last stream are left
+	 * unchanged).
+	 * @param progress The progress meter (or null if none)
+	 * @param in The input stream
+	 * @param out The output stream
+	 */
+	public void reset(ProgressMeter progress, BitInputStream in, BitOutputStream out) {
+		this.progress = progress;
+		this.in = in;
+		this.out = out;
+		crc32.reset();
+		checksum = crc32;
+		pendingLen = 0;
+		window.reset();
+		stats = new CompressionStats();
+	}
+	
+	/**
+	 * Use a different checksum for the data (CRC-32 by default).
+	 * This must be called before the stream is processed.
+	 * @param checksum The checksum
+	 */
+	public void setChecksum(Checksum checksum) {
+		this.checksum = checksum;
+	}
+	
+	/**
+	 * Use Adler-32 for the data instead of CRC-32 (as zlib streams do),
+	 * reusing the same instance for every stream.
+	 * This must be called before the stream is processed.
+	 */
+	public void useAdler32() {
+		if (adler32 == null) {
+			adler32 = new Adler32();
+		} else {
+			adler32.reset();
+		}
+		checksum = adler32;
+	}
+	
+	/**
+	 * Set a preset dictionary. The dictionary is loaded into the window,
+	 * so the data can refer back to it, but none of it is written out.
+	 * This must be called before the stream is processed.
+	 * @param b The dictionary
+	 */
+	public void setDictionary(byte[] b) {
+		int n = Math.min(b.length, WINDOW_SIZE);
+		window.add(b, b.length - n, n);
 	}
 	
 	/**
@@ -87,7 +174,16 @@ public class Inflater {
 	 */
 	public long process() throws IOException {
 		// Start reading blocks
+		stats.enter(CompressionStats.T_DECODE);
+		StreamEvent streamEvent = new StreamEvent();
+		streamEvent.begin();
+		blockEvent.begin();
+		long startIn = in.getCount();
+		long startOut = out.getCount();
 		while (true) {
+			long startBits = in.getBitCount();
+			long startSize = out.getCount();
+			long startSymbols = stats.getLiteralCount() + stats.getMatchCount();
 			int bfinal = in.readBits(1);                         // Read final bit
 			int btype = in.readBits(2);                          // Read block type
 			
@@ -96,22 +192,44 @@ public class Inflater {
 				in.clearBits();
 				processUncompressedBlock();
 			} else if (btype == 1) {
+				stats.enter(CompressionStats.T_HUFFMAN);
 				loadDefaultCodes();
+				stats.enter(CompressionStats.T_DECODE);
 				processHuffmanBlock();
 			} else if (btype == 2) {
+				stats.enter(CompressionStats.T_HUFFMAN);
 				readCodes();
+				stats.enter(CompressionStats.T_DECODE);
 				processHuffmanBlock();
 			} else {
 				throw new AssertionError("Invalid block type");
 			}
+			stats.addBlock(btype, out.getCount() - startSize);
+			endBlockEvent(btype, out.getCount() - startSize, startBits,
+					(int) (stats.getLiteralCount() + stats.getMatchCount() - startSymbols));
 			
 			// Update progress
-			gz.updateProgress(in.getCount());
+			if (progress != null) {
+				progress.update(in.getCount(), out.getCount());
+			}
 			
 			// Break on final block
 			if (bfinal == 1) break;
 		}
 		
+		stats.stop();
+		
+		// Record the stream
+		if (streamEvent.shouldCommit()) {
+			streamEvent.operation = "decompress";
+			streamEvent.rawSize = out.getCount() - startOut;
+			streamEvent.compressedSize = in.getCount() - startIn;
+			streamEvent.ratio = (double) streamEvent.compressedSize / Math.max(1, streamEvent.rawSize);
+			streamEvent.blocks = stats.getBlockCount();
+			streamEvent.checksumTime = stats.getPhaseNanos(CompressionStats.T_CHECKSUM);
+			streamEvent.commit();
+		}
+		
 		// Finished
 		return out.getCount();
 	}
@@ -129,16 +247,46 @@ public class Inflater {
 		
 		// Read data
 		byte[] b = new byte[len];
-		in.read(b, 0, len);
+		int off = 0;
+		while (off < len) {
+			int c = in.read(b, off, len - off);
+			if (c < 0) {
+				throw new EOFException("Unexpected end of stored block");
+			}
+			off += c;
+		}
 		
 		// Update checksum and window
-		crc.update(b, 0, len);
+		int prev = stats.enter(CompressionStats.T_CHECKSUM);
+		checksum.update(b, 0, len);
+		stats.enter(prev);
 		window.add(b, 0, len);
 		
 		// Write data to output file
 		out.write(b, 0, len);
 	}
 	
+	/**
+	 * Commit the flight recorder event for a block that has been read
+	 * (if it is being recorded), and start timing the next block.
+	 * @param type The block type
+	 * @param size The number of bytes in the block
+	 * @param startBits The input bit count before the block
+	 * @param n The number of symbols in the block
+	 */
+	private void endBlockEvent(int type, long size, long startBits, int n) {
+		if (blockEvent.shouldCommit()) {
+			blockEvent.operation = "decompress";
+			blockEvent.type = type;
+			blockEvent.rawSize = size;
+			blockEvent.compressedSize = in.getBitCount() - startBits;
+			blockEvent.symbols = n;
+			blockEvent.commit();
+			blockEvent = new BlockEvent();
+		}
+		blockEvent.begin();
+	}
+	
 	/**
 	 * Load the default set of Huffman codes.
 	 */
@@ -146,16 +294,16 @@ public class Inflater {
 		// Build literal codes
 		litCodes = new ArrayList<Integer>();
 		for (int i = 0; i < N_LITERALS; i++) {
-			litCodes.add(HuffmanTable.LIT.code[i]);
+			litCodes.add(fixedLit.code[i]);
 		}
-		litCodeMap = buildCodeMap(litCodes, HuffmanTable.LIT.codeLen);
+		litCodeMap = buildCodeMap(litCodes, fixedLit.codeLen);
 		
 		// Build distance codes
 		distCodes = new ArrayList<Integer>();
 		for (int i = 0; i < N_DISTANCES; i++) {
-			distCodes.add(HuffmanTable.DIST.code[i]);
+			distCodes.add(fixedDist.code[i]);
 		}
-		distCodeMap = buildCodeMap(distCodes, HuffmanTable.DIST.codeLen);
+		distCodeMap = buildCodeMap(distCodes, fixedDist.codeLen);
 	}
 	
 	/**
@@ -166,6 +314,8 @@ public class Inflater {
 		int numUsedDistances = 1 + in.readBits(5);
 		int numUsedLengths = 4 + in.readBits(4);
 		
+		int bits = 5 + 5 + 4 + 3 * numUsedLengths;               // Header size (for the statistics)
+		
 		// Read length codelengths
 		int[] lenCodeLen = new int[N_LENGTHS];
 		for (int i = 0; i < numUsedLengths; i++) {
@@ -180,8 +330,10 @@ public class Inflater {
 		int[] lengths = new int[numUsedLiterals + numUsedDistances];
 		for (int i = 0; i < numUsedLiterals + numUsedDistances; i++) {
 			int sym = readSymbol(lenCodes, lenCodeMap);
+			bits += lenCodeLen[sym];
 			if (sym == 16) {                                     // Repeat previous length 'n' times
 				int n = 3 + in.readBits(2);                      // 16 -> 3 to 6 repeats
+				bits += 2;
 				for (int j = 0; j < n; j++) {
 					 lengths[i + j] = lengths[i - 1];
 				}
@@ -190,8 +342,10 @@ public class Inflater {
 				int n;
 				if (sym == 17) {
 					n = 3 + in.readBits(3);                      // 17 -> 3 to 10 repeats
+					bits += 3;
 				} else {
 					n = 11 + in.readBits(7);                     // 18 -> 11 to 138 repeats
+					bits += 7;
 				}
 				for (int j = 0; j < n; j++) {
 					 lengths[i + j] = 0;
@@ -202,6 +356,8 @@ public class Inflater {
 			}
 		}
 		
+		stats.addHeaderBits(bits);
+		
 		// Get literal codelengths
 		int[] litCodeLen = new int[N_LITERALS];
 		System.arraycopy(lengths, 0, litCodeLen, 0, numUsedLiterals);
@@ -259,30 +415,40 @@ public class Inflater {
 			if (litSym < END_OF_BLOCK) {
 				// Get byte value
 				byte b = (byte) litSym;
+				stats.addLiteral();
 				
 				// Update checksum and window
-				crc.update(b);
+				if (pendingLen == PENDING_SIZE) {
+					updateChecksum();
+				}
+				pending[pendingLen++] = b;
 				window.add(b);
 				
 				// Write byte to output file
 				out.writeByte(b);
 			} else if (litSym == END_OF_BLOCK) {
 				// End of block reached
+				updateChecksum();
 				break;
 			} else {
 				// Get length symbol and value
 				int lenSym = litSym - 257;
-				int len = LZPair.lenLower[lenSym] + in.readBits(LZPair.lenNBits[lenSym]);
+				int len = LZPair.lengthBase(lenSym) + in.readBits(LZPair.lengthExtraBits(lenSym));
 				
 				// Get distance symbol and value
 				int distSym = readSymbol(distCodes, distCodeMap);
-				int dist = LZPair.distLower[distSym] + in.readBits(LZPair.distNBits[distSym]);
+				int dist = LZPair.distanceBase(distSym) + in.readBits(LZPair.distanceExtraBits(distSym));
+				stats.addMatch(len, dist);
 				
 				// Get bytes from window
 				byte[] b = window.getBytes(dist, len);
 				
 				// Update checksum and window
-				crc.update(b);
+				if (pendingLen + len > PENDING_SIZE) {
+					updateChecksum();
+				}
+				System.arraycopy(b, 0, pending, pendingLen, len);
+				pendingLen += len;
 				window.add(b);
 				
 				// Write bytes to output file
@@ -292,12 +458,23 @@ public class Inflater {
 	}
 	
 	/**
-	 * Read a symbol from the input stream.
+	 * Add the pending bytes to the checksum.
+	 */
+	private void updateChecksum() {
+		int prev = stats.enter(CompressionStats.T_CHECKSUM);
+		checksum.update(pending, 0, pendingLen);
+		stats.enter(prev);
+		pendingLen = 0;
+	}
+	
+	/**
+	 * Read a symbol from the input stream. This is package-private
+	 * so that the benchmarks can time it on its own.
 	 * @param codes The code list to use
 	 * @param codeMap The code map to use
 	 * @return The decoded symbol
 	 */
-	private int readSymbol(List<Integer> codes, Map<Integer, List<Integer>> codeMap) throws IOException {
+	int readSymbol(List<Integer> codes, Map<Integer, List<Integer>> codeMap) throws IOException {
 		int code = 0;
 		int codeLen = 0;
 		int index = -1;
@@ -384,11 +561,20 @@ public class Inflater {
 		return codeMap;
 	}
 	
+	/**
+	 * Get the statistics for the stream (the phase times, blocks,
+	 * symbols and header sizes).
+	 * @return The statistics
+	 */
+	public CompressionStats getStats() {
+		return stats;
+	}
+	
 	/**
 	 * Get the current value of the checksum.
-	 * @return The current CRC value
+	 * @return The current checksum value
 	 */
-	public int getCRCValue() {
-		return crc.getValue();
+	public int getChecksumValue() {
+		return checksum.getValue();
 	}
 }
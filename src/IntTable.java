@@ -0,0 +1,26 @@
+/**
+ * A fixed-size table of ints, such as the hash heads and links of a match
+ * finder. Tables come from a TableAllocator, which may keep them off the heap.
+ * @author Ridge Shrubsall (21112211)
+ */
+public interface IntTable {
+	/**
+	 * Get a value from the table.
+	 * @param i The index
+	 * @return The value
+	 */
+	public int get(int i);
+	
+	/**
+	 * Set a value in the table.
+	 * @param i The index
+	 * @param value The value
+	 */
+	public void set(int i, int value);
+	
+	/**
+	 * Get the number of values in the table.
+	 * @return The size
+	 */
+	public int size();
+}
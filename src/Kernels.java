@@ -0,0 +1,92 @@
+/**
+ * The inner loops of the compressor that can use SIMD instructions:
+ * measuring matches, counting bytes and copying history. This class holds
+ * the scalar versions. The vector versions of matching and copying (in the
+ * separate vector/ source folder) use the incubating Vector API, and are
+ * only loaded when the system property deflate.vector is true and
+ * jdk.incubator.vector is present (e.g. java --add-modules
+ * jdk.incubator.vector -Ddeflate.vector=true).
+ * @author Ridge Shrubsall (21112211)
+ */
+public class Kernels {
+	/**
+	 * The name of the vector implementation (in the same package as this class).
+	 */
+	private static final String VECTOR_CLASS = Kernels.class.getName().replaceFirst("Kernels$", "VectorKernels");
+	
+	/**
+	 * The kernels in use.
+	 */
+	private static final Kernels INSTANCE = load(Boolean.getBoolean("deflate.vector"));
+	
+	
+	/**
+	 * Get the kernels in use.
+	 * @return The kernels
+	 */
+	public static Kernels get() {
+		return INSTANCE;
+	}
+	
+	/**
+	 * Load the vector kernels if requested and available, otherwise the scalar ones.
+	 * @param vector Whether to try the vector kernels
+	 * @return The kernels
+	 */
+	public static Kernels load(boolean vector) {
+		if (vector && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+			try {
+				return (Kernels) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError e) {
+				// Not compiled in (or not linkable): fall back to scalar code
+			}
+		}
+		return new Kernels();
+	}
+	
+	/**
+	 * Get the name of these kernels.
+	 * @return The name
+	 */
+	public String getName() {
+		return "scalar";
+	}
+	
+	/**
+	 * Get the length of the match between two strings.
+	 * @param b The data array
+	 * @param x The offset of the earlier string
+	 * @param y The offset of the later string
+	 * @param max The maximum length (both strings must have this many bytes)
+	 * @return The match length
+	 */
+	public int matchLength(byte[] b, int x, int y, int max) {
+		return MatchLength.compare(b, x, y, max);
+	}
+	
+	/**
+	 * Add the byte frequencies of the given data to a histogram.
+	 * @param b The data array
+	 * @param off The starting offset
+	 * @param len The number of bytes
+	 * @param freq The frequencies of each byte value
+	 */
+	public void histogram(byte[] b, int off, int len, int[] freq) {
+		for (int i = off; i < off + len; i++) {
+			freq[b[i] & 0xff]++;
+		}
+	}
+	
+	/**
+	 * Copy bytes towards the front of an array (or to another array),
+	 * as when the window slides.
+	 * @param src The source array
+	 * @param srcOff The source offset
+	 * @param dst The destination array
+	 * @param dstOff The destination offset (at most the source offset, if the same array)
+	 * @param len The number of bytes
+	 */
+	public void copy(byte[] src, int srcOff, byte[] dst, int dstOff, int len) {
+		System.arraycopy(src, srcOff, dst, dstOff, len);
+	}
+}
@@ -72,17 +72,83 @@ public class LZPair {
 		}
 	}
 	
+	/**
+	 * Get the length symbol for a match length.
+	 * @param len The length value (3 to 258)
+	 * @return The length symbol
+	 */
+	public static int lengthSymbol(int len) {
+		return lenSymbols[len];
+	}
+	
+	/**
+	 * Get the distance symbol for a match distance.
+	 * @param dist The distance value (1 to 32768)
+	 * @return The distance symbol
+	 */
+	public static int distanceSymbol(int dist) {
+		if (dist <= 256) {
+			return distSymbols[dist];
+		}
+		return distSymbols[256 + ((dist - 1) >> 7)];
+	}
+	
+	
+	/**
+	 * Get the smallest match length for a length code.
+	 * @param i The length code (0 to 28, for symbols 257 to 285)
+	 * @return The length value
+	 */
+	public static int lengthBase(int i) {
+		return lenLower[i];
+	}
+	
+	/**
+	 * Get the number of extra bits for a length code.
+	 * @param i The length code (0 to 28, for symbols 257 to 285)
+	 * @return The number of bits
+	 */
+	public static int lengthExtraBits(int i) {
+		return lenNBits[i];
+	}
+	
+	/**
+	 * Get the smallest match distance for a distance symbol.
+	 * @param i The distance symbol (0 to 29)
+	 * @return The distance value
+	 */
+	public static int distanceBase(int i) {
+		return distLower[i];
+	}
+	
+	/**
+	 * Get the number of extra bits for a distance symbol.
+	 * @param i The distance symbol (0 to 29)
+	 * @return The number of bits
+	 */
+	public static int distanceExtraBits(int i) {
+		return distNBits[i];
+	}
+	
 	
 	/*
 	 * Ranges for Length/distance symbols
-	 * (see RFC 1951, section 3.2.5)
-	 */
-	public static final int[] lenLower;
-	public static final int[] lenUpper;
-	public static final int[] lenNBits;
-	public static final int[] distLower;
-	public static final int[] distUpper;
-	public static final int[] distNBits;
+	 * (see RFC 1951, section 3.2.5), kept private so that they can't be
+	 * changed
+	 */
+	private static final int[] lenLower;
+	private static final int[] lenUpper;
+	private static final int[] lenNBits;
+	private static final int[] distLower;
+	private static final int[] distUpper;
+	private static final int[] distNBits;
+	
+	/*
+	 * Lookup tables for length and distance symbols
+	 * (distances over 256 are looked up in steps of 128)
+	 */
+	private static final int[] lenSymbols;
+	private static final int[] distSymbols;
 	static {
 		// Generate length ranges
 		lenLower = new int[29];
@@ -121,6 +187,24 @@ public class LZPair {
 			distUpper[i] = distLower[i] + (1 << (k + 1)) - 1;
 			distNBits[i] = k + 1;
 		}
+		
+		// Generate symbol lookup tables
+		lenSymbols = new int[259];
+		for (int i = 0; i < 29; i++) {
+			for (int len = lenLower[i]; len <= lenUpper[i]; len++) {
+				lenSymbols[len] = 257 + i;
+			}
+		}
+		distSymbols = new int[512];
+		for (int i = 0; i < 30; i++) {
+			for (int dist = distLower[i]; dist <= distUpper[i]; dist++) {
+				if (dist <= 256) {
+					distSymbols[dist] = i;
+				} else if ((dist - 1) % 128 == 0) {
+					distSymbols[256 + ((dist - 1) >> 7)] = i;
+				}
+			}
+		}
 	}
 	
 	/**
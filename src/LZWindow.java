@@ -1,19 +1,10 @@
 /**
- * Implements a Lempel-Ziv sliding window dictionary.
+ * Implements a Lempel-Ziv sliding window dictionary, used to copy
+ * matches when inflating. (Deflater searches its input buffer directly,
+ * through a MatchFinder.)
  * @author Ridge Shrubsall (21112211)
  */
 public class LZWindow {
-	/**
-	 * The minimum match length.
-	 */
-	private static final int MIN_MATCH = 3;
-	
-	/**
-	 * The maximum match length.
-	 */
-	private static final int MAX_MATCH = 258;
-	
-	
 	/**
 	 * The maximum size of the window.
 	 */
@@ -84,34 +75,11 @@ public class LZWindow {
 	}
 	
 	/**
-	 * Find a previous match for the given bytes.
-	 * @param b The data array
-	 * @param off The starting offset
-	 * @param len The number of bytes
-	 * @return A distance/length pair
+	 * Empty the window, so that it can be used for a new stream.
 	 */
-	public LZPair find(byte[] buffer, int off, int len) {
-		// Check if the window is empty
-		if (size == 0) return null;
-		
-		// Look backwards through the window
-		for (int i = 1; i <= size; i++) {
-			int start = (pos - i) & mask;
-			int matchLength = 0;
-			int x = start;                                  // Offsets into window and data buffers
-			int y = off;
-			while (matchLength < MAX_MATCH && y < len) {    // Determine the match length at distance 'i'
-				if (dict[x] != buffer[y]) break;
-				matchLength++;
-				x = (x + 1) & mask;
-				if (x == pos) x = start;                    // Window wraps around past current position
-				y++;
-			}
-			if (matchLength >= MIN_MATCH) {                 // Return first match
-				return new LZPair(i, matchLength);
-			}
-		}
-		return null;
+	public void reset() {
+		pos = 0;
+		size = 0;
 	}
 	
 	/**
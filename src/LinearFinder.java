@@ -0,0 +1,232 @@
+/**
+ * Finds matches by searching every distance in the window, nearest first,
+ * after trying the most recent match distances.
+ * @author Ridge Shrubsall (21112211)
+ */
+public class LinearFinder implements MatchFinder {
+	/**
+	 * The minimum match length.
+	 */
+	private static final int MIN_MATCH = 3;
+	
+	/**
+	 * The maximum match length.
+	 */
+	private static final int MAX_MATCH = 258;
+	
+	/**
+	 * The match length at which a recent distance is taken
+	 * without searching the rest of the window.
+	 */
+	private static final int NICE_MATCH = 32;
+	
+	/**
+	 * The number of recent match distances to try first.
+	 */
+	private static final int NUM_RECENT = 4;
+	
+	/**
+	 * The kernels used to measure matches.
+	 */
+	private static final Kernels KERNELS = Kernels.get();
+	
+	
+	/**
+	 * The maximum size of the window.
+	 */
+	private int maxSize;
+	
+	/**
+	 * The current size of the window.
+	 */
+	private int size;
+	
+	/**
+	 * The most recent match distances (most recent first).
+	 */
+	private int[] recent;
+	private int numRecent;
+	
+	/**
+	 * The number of searches, the number of matches found at a recent
+	 * distance, and the number of those that ended the search early.
+	 */
+	private long numSearches;
+	private long numRecentHits;
+	private long numRecentEarly;
+	
+	/**
+	 * Create a new finder.
+	 * @param s The window size
+	 */
+	public LinearFinder(int s) {
+		maxSize = s;
+		size = 0;
+		recent = new int[NUM_RECENT];
+		numRecent = 0;
+	}
+	
+	/**
+	 * Add the next bytes to the history.
+	 * @param len The number of bytes
+	 */
+	public void add(int len) {
+		size = (int) Math.min(maxSize, (long) size + len);
+	}
+	
+	/**
+	 * Find a previous match for the given bytes.
+	 * @param buffer The data array
+	 * @param off The starting offset
+	 * @param len The number of bytes
+	 * @return A distance/length pair
+	 */
+	public LZPair find(byte[] buffer, int off, int len) {
+		return find(buffer, off, len, MIN_MATCH);
+	}
+	
+	/**
+	 * Find a previous match of at least the given length.
+	 * @param buffer The data array
+	 * @param off The starting offset
+	 * @param len The number of bytes
+	 * @param minLength The minimum match length
+	 * @return A distance/length pair
+	 */
+	public LZPair find(byte[] buffer, int off, int len, int minLength) {
+		// Check if the window is empty
+		if (size == 0) return null;
+		numSearches++;
+		
+		// Try the recent distances first, stopping on a long enough match
+		int recentDist = 0;
+		int recentLength = 0;
+		for (int i = 0; i < numRecent; i++) {
+			int matchLength = matchLength(recent[i], buffer, off, len);
+			if (matchLength > recentLength) {
+				recentDist = recent[i];
+				recentLength = matchLength;
+			}
+		}
+		if (recentLength >= NICE_MATCH) {
+			numRecentHits++;
+			numRecentEarly++;
+			return pair(recentDist, recentLength);
+		}
+		
+		// Look backwards through the window
+		for (int i = 1; i <= size; i++) {
+			int matchLength = matchLength(i, buffer, off, len);
+			if (matchLength >= minLength) {                 // Return first match (unless a recent one is longer)
+				if (recentLength > matchLength) {
+					numRecentHits++;
+					return pair(recentDist, recentLength);
+				}
+				return pair(i, matchLength);
+			}
+		}
+		if (recentLength >= minLength) {
+			numRecentHits++;
+			return pair(recentDist, recentLength);
+		}
+		return null;
+	}
+	
+	/**
+	 * Find every useful previous match for the given bytes: the longest match
+	 * at each distance that is longer than all matches at shorter distances.
+	 * Any shorter length can be taken from the first of these that reaches it.
+	 * The recent distances are left unchanged.
+	 * @param buffer The data array
+	 * @param off The starting offset
+	 * @param len The number of bytes
+	 * @param dists The array to store the distances in (by increasing distance)
+	 * @param lens The array to store the lengths in (by increasing length)
+	 * @return The number of matches found
+	 */
+	public int findAll(byte[] buffer, int off, int len, int[] dists, int[] lens) {
+		numSearches++;
+		int n = 0;
+		int longest = MIN_MATCH - 1;
+		for (int i = 1; i <= size && longest < MAX_MATCH; i++) {
+			int matchLength = matchLength(i, buffer, off, len);
+			if (matchLength > longest) {
+				dists[n] = i;
+				lens[n] = matchLength;
+				n++;
+				longest = matchLength;
+			}
+		}
+		return n;
+	}
+	
+	/**
+	 * Find the length of the match at the given distance. The match may
+	 * run past the starting offset, as it would when copied.
+	 * @param dist The distance to go back
+	 * @param buffer The data array
+	 * @param off The starting offset
+	 * @param len The number of bytes
+	 * @return The match length
+	 */
+	private static int matchLength(int dist, byte[] buffer, int off, int len) {
+		int max = Math.min(MAX_MATCH, len - off);
+		return KERNELS.matchLength(buffer, off - dist, off, max);
+	}
+	
+	/**
+	 * Create a distance/length pair, moving its distance to the front
+	 * of the recent distances.
+	 * @param dist The distance value
+	 * @param len The length value
+	 * @return A distance/length pair
+	 */
+	private LZPair pair(int dist, int len) {
+		int i = 0;
+		while (i < numRecent && recent[i] != dist) i++;
+		if (i == numRecent) {                               // Drop the oldest distance if full
+			if (numRecent < NUM_RECENT) numRecent++;
+			i = numRecent - 1;
+		}
+		System.arraycopy(recent, 0, recent, 1, i);
+		recent[0] = dist;
+		return new LZPair(dist, len);
+	}
+	
+	/**
+	 * Forget the history and the search counts, so that the finder
+	 * can be used for a new stream.
+	 */
+	public void reset() {
+		size = 0;
+		numRecent = 0;
+		numSearches = 0;
+		numRecentHits = 0;
+		numRecentEarly = 0;
+	}
+	
+	/**
+	 * Get the number of searches made.
+	 * @return The search count
+	 */
+	public long getSearchCount() {
+		return numSearches;
+	}
+	
+	/**
+	 * Get the number of matches taken from a recent distance.
+	 * @return The hit count
+	 */
+	public long getRecentHits() {
+		return numRecentHits;
+	}
+	
+	/**
+	 * Get the number of searches ended early by a long match
+	 * at a recent distance.
+	 * @return The early hit count
+	 */
+	public long getRecentEarlyHits() {
+		return numRecentEarly;
+	}
+}
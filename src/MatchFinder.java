@@ -0,0 +1,64 @@
+/**
+ * Finds previous matches for the data being compressed. The data is
+ * added to the finder as it is parsed, and each search looks back over
+ * the data added so far. The finder doesn't copy the data: it reads the
+ * history from the data array passed to each search, so the caller keeps
+ * the last window of data (or all of it, if less) just before the offset.
+ * @author Ridge Shrubsall (21112211)
+ */
+public interface MatchFinder {
+	/**
+	 * Add the next bytes to the history.
+	 * @param len The number of bytes
+	 */
+	public void add(int len);
+	
+	/**
+	 * Find a previous match of at least the given length.
+	 * @param buffer The data array
+	 * @param off The starting offset
+	 * @param len The number of bytes
+	 * @param minLength The minimum match length
+	 * @return A distance/length pair (or null if none)
+	 */
+	public LZPair find(byte[] buffer, int off, int len, int minLength);
+	
+	/**
+	 * Find the previous matches for the given bytes, each one longer than
+	 * the last and at a greater distance. Any shorter length can be taken
+	 * from the first of these that reaches it.
+	 * @param buffer The data array
+	 * @param off The starting offset
+	 * @param len The number of bytes
+	 * @param dists The array to store the distances in
+	 * @param lens The array to store the lengths in
+	 * @return The number of matches found
+	 */
+	public int findAll(byte[] buffer, int off, int len, int[] dists, int[] lens);
+	
+	/**
+	 * Forget the history and the search counts, keeping the finder's
+	 * tables, so that it can be used for a new stream.
+	 */
+	public void reset();
+	
+	/**
+	 * Get the number of searches made.
+	 * @return The search count
+	 */
+	public long getSearchCount();
+	
+	/**
+	 * Get the number of matches taken from a recent match distance
+	 * (or 0 if the finder doesn't try recent distances first).
+	 * @return The hit count
+	 */
+	public long getRecentHits();
+	
+	/**
+	 * Get the number of searches ended early by a long match at a
+	 * recent distance (or 0 if the finder doesn't try them first).
+	 * @return The early hit count
+	 */
+	public long getRecentEarlyHits();
+}
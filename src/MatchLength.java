@@ -0,0 +1,59 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Measures how far two strings in the same array match, comparing eight
+ * bytes at a time. The first mismatch in a word is found from the number
+ * of trailing zeros of the XOR (the words are read little-endian, so the
+ * lowest set bit belongs to the first differing byte).
+ * @author Ridge Shrubsall (21112211)
+ */
+public class MatchLength {
+	/**
+	 * A view of a byte array as little-endian longs (at any offset).
+	 */
+	private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	
+	
+	/**
+	 * Get the length of the match between two strings, comparing
+	 * a word at a time.
+	 * @param b The data array
+	 * @param x The offset of the earlier string
+	 * @param y The offset of the later string
+	 * @param max The maximum length (both strings must have this many bytes)
+	 * @return The match length
+	 */
+	public static int compare(byte[] b, int x, int y, int max) {
+		int len = 0;
+		while (len + 8 <= max) {
+			long diff = (long) LONGS.get(b, x + len) ^ (long) LONGS.get(b, y + len);
+			if (diff != 0) {
+				return len + (Long.numberOfTrailingZeros(diff) >>> 3);
+			}
+			len += 8;
+		}
+		while (len < max && b[x + len] == b[y + len]) {
+			len++;
+		}
+		return len;
+	}
+	
+	/**
+	 * Get the length of the match between two strings, comparing
+	 * a byte at a time.
+	 * @param b The data array
+	 * @param x The offset of the earlier string
+	 * @param y The offset of the later string
+	 * @param max The maximum length (both strings must have this many bytes)
+	 * @return The match length
+	 */
+	public static int compareBytes(byte[] b, int x, int y, int max) {
+		int len = 0;
+		while (len < max && b[x + len] == b[y + len]) {
+			len++;
+		}
+		return len;
+	}
+}
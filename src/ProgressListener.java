@@ -0,0 +1,18 @@
+/**
+ * Receives progress reports while a stream is compressed or decompressed.
+ * Reports are limited by time (see ProgressMeter), not sent for every
+ * buffer, and are made on the compressing thread, so a listener should
+ * return quickly.
+ * @author Ridge Shrubsall (21112211)
+ */
+public interface ProgressListener {
+	/**
+	 * Report the progress of the current stream.
+	 * @param bytesIn The number of bytes read so far
+	 * @param bytesOut The number of bytes written so far
+	 * @param total The size of the input (or -1 if unknown)
+	 * @param rate The speed so far (in MB/s of input)
+	 * @param eta The estimated time until the input is finished (in ms, or -1 if unknown)
+	 */
+	public abstract void progress(long bytesIn, long bytesOut, long total, double rate, long eta);
+}
@@ -0,0 +1,79 @@
+/**
+ * Passes the progress of a stream on to a listener, at most once per
+ * interval. Each update only reads the clock unless a report is due, so
+ * the deflater and inflater can update it every buffer or block.
+ * @author Ridge Shrubsall (21112211)
+ */
+public class ProgressMeter {
+	/**
+	 * The time between reports (in ns).
+	 */
+	private static final long INTERVAL = 1000000000L;
+	
+	
+	/**
+	 * The listener for the reports.
+	 */
+	private ProgressListener listener;
+	
+	/**
+	 * The size of the input (or -1 if unknown).
+	 */
+	private long total;
+	
+	/**
+	 * When the stream was started, and when the next report is due.
+	 */
+	private long startTime;
+	private long nextTime;
+	
+	/**
+	 * Create a new ProgressMeter, starting the clock.
+	 * @param listener The listener for the reports
+	 * @param total The size of the input (or -1 if unknown)
+	 */
+	public ProgressMeter(ProgressListener listener, long total) {
+		this.listener = listener;
+		this.total = total;
+		startTime = System.nanoTime();
+		nextTime = startTime + INTERVAL;
+	}
+	
+	/**
+	 * Update the progress, reporting it if the interval has passed.
+	 * @param bytesIn The number of bytes read so far
+	 * @param bytesOut The number of bytes written so far
+	 */
+	public void update(long bytesIn, long bytesOut) {
+		long now = System.nanoTime();
+		if (now - nextTime >= 0) {
+			report(now, bytesIn, bytesOut);
+			nextTime = now + INTERVAL;
+		}
+	}
+	
+	/**
+	 * Report the final progress of the stream.
+	 * @param bytesIn The number of bytes read
+	 * @param bytesOut The number of bytes written
+	 */
+	public void finish(long bytesIn, long bytesOut) {
+		report(System.nanoTime(), bytesIn, bytesOut);
+	}
+	
+	/**
+	 * Work out the speed and the time left, and pass them on to the listener.
+	 * @param now The current time (in ns)
+	 * @param bytesIn The number of bytes read so far
+	 * @param bytesOut The number of bytes written so far
+	 */
+	private void report(long now, long bytesIn, long bytesOut) {
+		long elapsed = Math.max(1, now - startTime);
+		double rate = bytesIn * 1000.0 / elapsed;                    // MB/s (bytes per microsecond)
+		long eta = -1;
+		if (total >= 0 && bytesIn > 0) {
+			eta = (long) ((double) Math.max(0, total - bytesIn) * elapsed / bytesIn / 1000000);
+		}
+		listener.progress(bytesIn, bytesOut, total, rate, eta);
+	}
+}
@@ -0,0 +1,52 @@
+import jdk.jfr.*;
+
+/**
+ * A flight recorder event for each stream compressed by the deflater or
+ * decompressed by the inflater. It is only filled in and committed while
+ * a recording has it enabled.
+ * @author Ridge Shrubsall (21112211)
+ */
+@Name("deflate.Stream")
+@Label("DEFLATE Stream")
+@Category("DEFLATE")
+@Description("A stream compressed or decompressed")
+public class StreamEvent extends Event {
+	/**
+	 * Whether the stream was compressed or decompressed.
+	 */
+	@Label("Operation")
+	String operation;
+	
+	/**
+	 * The size of the uncompressed data.
+	 */
+	@Label("Raw Size")
+	@DataAmount(DataAmount.BYTES)
+	long rawSize;
+	
+	/**
+	 * The size of the compressed data (without the gzip or zlib wrapper).
+	 */
+	@Label("Compressed Size")
+	@DataAmount(DataAmount.BYTES)
+	long compressedSize;
+	
+	/**
+	 * The compressed size over the raw size.
+	 */
+	@Label("Ratio")
+	double ratio;
+	
+	/**
+	 * The number of blocks.
+	 */
+	@Label("Blocks")
+	int blocks;
+	
+	/**
+	 * The time spent updating the checksum.
+	 */
+	@Label("Checksum Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long checksumTime;
+}
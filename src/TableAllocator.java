@@ -0,0 +1,91 @@
+/**
+ * Allocates the tables of a match finder. This class keeps them on the heap
+ * as int arrays. The off-heap version (in the separate foreign/ source folder)
+ * allocates them from an arena with the Foreign Memory API, and frees them all
+ * when it is closed. It is only loaded by offHeap(), and needs Java 22 (or
+ * Java 21 with --enable-preview).
+ * @author Ridge Shrubsall (21112211)
+ */
+public class TableAllocator implements AutoCloseable {
+	/**
+	 * The name of the off-heap implementation.
+	 */
+	private static final String OFF_HEAP_CLASS = "ArenaAllocator";
+	
+	
+	/**
+	 * Create an allocator for off-heap tables if the Foreign Memory API
+	 * is available, otherwise one for heap tables.
+	 * @return The allocator
+	 */
+	public static TableAllocator offHeap() {
+		try {
+			return (TableAllocator) Class.forName(OFF_HEAP_CLASS).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			// Not compiled in (or not linkable): fall back to heap tables
+			return new TableAllocator();
+		}
+	}
+	
+	/**
+	 * Check whether the tables are allocated off the heap.
+	 * @return True if off-heap
+	 */
+	public boolean isOffHeap() {
+		return false;
+	}
+	
+	/**
+	 * Allocate a table, with every value set to the given value.
+	 * @param size The number of values
+	 * @param value The initial value
+	 * @return The table
+	 */
+	public IntTable allocate(int size, int value) {
+		int[] values = new int[size];
+		java.util.Arrays.fill(values, value);
+		return new ArrayTable(values);
+	}
+	
+	/**
+	 * Get the int array that a heap table is stored in, so that a match
+	 * finder's search loop can index it directly instead of calling through
+	 * IntTable (which is no longer monomorphic once off-heap tables are
+	 * loaded too).
+	 * @param table The table
+	 * @return The array (or null if the table is off the heap)
+	 */
+	static int[] arrayOf(IntTable table) {
+		return (table instanceof ArrayTable) ? ((ArrayTable) table).values : null;
+	}
+	
+	/**
+	 * Free the tables allocated so far. Heap tables are left to the
+	 * garbage collector.
+	 */
+	public void close() {
+	}
+	
+	/**
+	 * A table stored in an int array.
+	 */
+	static class ArrayTable implements IntTable {
+		private final int[] values;
+		
+		ArrayTable(int[] values) {
+			this.values = values;
+		}
+		
+		public int get(int i) {
+			return values[i];
+		}
+		
+		public void set(int i, int value) {
+			values[i] = value;
+		}
+		
+		public int size() {
+			return values.length;
+		}
+	}
+}
@@ -1,8 +1,18 @@
 import static org.junit.Assert.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.Test;
 
 /**
- * Test cases for CRC32, HuffmanTree and LZWindow.
+ * Test cases for the checksums, codecs, match finders and compressors.
  * @author Ridge Shrubsall (21112211)
  */
 public class UnitTests {
@@ -32,6 +42,591 @@ public class UnitTests {
 		assertEquals(expected, crc.getValue());
 	}
 	
+	/**
+	 * Test cases for Adler-32 checksums.
+	 */
+	@Test
+	public void testAdler32() {
+		testAdler32Case("", 0x00000001);
+		testAdler32Case("a", 0x00620062);
+		testAdler32Case("abc", 0x024d0127);
+		testAdler32Case("message digest", 0x29750586);
+		testAdler32Case("abcdefghijklmnopqrstuvwxyz", 0x90860b20);
+		testAdler32Case("Wikipedia", 0x11e60398);
+		StringBuffer buffer = new StringBuffer();
+		for (int i = 0; i < 8; i++) {
+			buffer.append("1234567890");
+		}
+		testAdler32Case(buffer.toString(), 0x97b61069);
+	}
+	
+	private void testAdler32Case(String input, int expected) {
+		Adler32 adler = new Adler32();
+		adler.update(input.getBytes());
+		assertEquals(expected, adler.getValue());
+	}
+	
+	/**
+	 * Test zlib streams with a preset dictionary, checking them against
+	 * java.util.zip as well as our own decompressor.
+	 */
+	@Test
+	public void testPresetDictionary() throws Exception {
+		byte[] dict = "{\"user\": \"\", \"action\": \"login\", \"status\": \"ok\"}".getBytes();
+		byte[] data = "{\"user\": \"alice\", \"action\": \"login\", \"status\": \"ok\"}".getBytes();
+		
+		// Compress with and without the dictionary
+		ZLibCompressor zlib = new ZLibCompressor();
+		ByteArrayOutputStream plain = new ByteArrayOutputStream();
+		zlib.compress(new ByteArrayInputStream(data), plain);
+		zlib.setDictionary(dict);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		zlib.compress(new ByteArrayInputStream(data), out);
+		byte[] compressed = out.toByteArray();
+		assertTrue(compressed.length < plain.size());
+		
+		// Decompress with java.util.zip
+		java.util.zip.Inflater inflater = new java.util.zip.Inflater();
+		inflater.setInput(compressed);
+		byte[] result = new byte[data.length];
+		assertEquals(0, inflater.inflate(result));
+		assertTrue(inflater.needsDictionary());
+		assertEquals(ZLibCompressor.adler32(dict), inflater.getAdler());
+		inflater.setDictionary(dict);
+		assertEquals(data.length, inflater.inflate(result));
+		assertTrue(inflater.finished());
+		assertArrayEquals(data, result);
+		
+		// Decompress with our own inflater
+		ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+		zlib.decompress(new ByteArrayInputStream(compressed), decompressed);
+		assertArrayEquals(data, decompressed.toByteArray());
+		
+		// The window is widened to hold the whole dictionary, even with the default options
+		Random random = new Random(1);
+		byte[] large = new byte[2000];
+		for (int i = 0; i < large.length; i++) {
+			large[i] = (byte) ('a' + random.nextInt(26));
+		}
+		data = Arrays.copyOf(large, 200);                           // Only at the start of the dictionary
+		zlib.setDictionary(large);
+		out = new ByteArrayOutputStream();
+		zlib.compress(new ByteArrayInputStream(data), out);
+		compressed = out.toByteArray();
+		assertEquals(3, compressed[0] >> 4);                        // CINFO (a 2048 byte window)
+		assertTrue(compressed.length < 30);
+		inflater = new java.util.zip.Inflater();
+		inflater.setInput(compressed);
+		result = new byte[data.length];
+		assertEquals(0, inflater.inflate(result));
+		inflater.setDictionary(large);
+		assertEquals(data.length, inflater.inflate(result));
+		assertArrayEquals(data, result);
+		decompressed = new ByteArrayOutputStream();
+		zlib.decompress(new ByteArrayInputStream(compressed), decompressed);
+		assertArrayEquals(data, decompressed.toByteArray());
+		
+		assertEquals(256, ZLibCompressor.windowSizeFor(dict));
+		assertEquals(512, ZLibCompressor.windowSizeFor(new byte[257]));
+		assertEquals(32768, ZLibCompressor.windowSizeFor(new byte[32768]));
+		assertEquals(32768, ZLibCompressor.windowSizeFor(new byte[40000]));
+	}
+	
+	/**
+	 * Test that a trained dictionary fits the requested size, doesn't repeat
+	 * any of its segments, and makes held-out samples smaller.
+	 */
+	@Test
+	public void testDictionaryTrainer() {
+		Random random = new Random(1);
+		String[] actions = {"login", "logout", "view", "purchase", "search"};
+		List<byte[]> training = new ArrayList<byte[]>();
+		List<byte[]> heldOut = new ArrayList<byte[]>();
+		for (int i = 0; i < 500; i++) {
+			String sample = String.format("{\"id\": %d, \"user\": \"user%04d\", \"action\": \"%s\", \"status\": \"%s\", \"client\": \"web/%d.%d\"}",
+					i, random.nextInt(10000), actions[random.nextInt(actions.length)], random.nextBoolean() ? "ok" : "error",
+					random.nextInt(3), random.nextInt(10));
+			(i % 5 == 4 ? heldOut : training).add(sample.getBytes());
+		}
+		
+		byte[] dict = new DictionaryTrainer(training).train(1024);
+		assertTrue(dict.length > 0);
+		assertTrue(dict.length <= 1024);
+		
+		// No 64-byte segment is chosen twice
+		Set<String> segments = new HashSet<String>();
+		for (int i = 0; i + 64 <= dict.length; i += 64) {
+			assertTrue(segments.add(new String(dict, i, 64)));
+		}
+		
+		long without = DictionaryTrainer.compressedSize(heldOut, null, 256);
+		long with = DictionaryTrainer.compressedSize(heldOut, dict, 256);
+		assertTrue(with < without);
+	}
+	
+	/**
+	 * Test that the optimal parse produces a valid stream no larger than
+	 * the greedy parse.
+	 */
+	@Test
+	public void testOptimalParse() throws Exception {
+		StringBuffer buffer = new StringBuffer();
+		for (int i = 0; i < 2000; i++) {
+			buffer.append("row " + (i * 7919 % 1000) + ", abcab" + (i % 13) + " abcabcab;\n");
+		}
+		byte[] data = buffer.toString().getBytes();
+		
+		byte[] greedy = deflate(data, Deflater.S_DEFAULT);
+		byte[] optimal = deflate(data, Deflater.S_OPTIMAL);
+		assertTrue(optimal.length <= greedy.length);
+		
+		// Decompress with java.util.zip
+		java.util.zip.Inflater inflater = new java.util.zip.Inflater(true);
+		inflater.setInput(optimal);
+		byte[] result = new byte[data.length];
+		assertEquals(data.length, inflater.inflate(result));
+		assertArrayEquals(data, result);
+	}
+	
+	/**
+	 * Test that each compression strategy produces a valid stream for text
+	 * and for long runs, that run-length encoding only finds matches at
+	 * distance 1, and that Huffman-only compression finds no matches.
+	 */
+	@Test
+	public void testStrategies() throws Exception {
+		StringBuffer buffer = new StringBuffer();
+		for (int i = 0; i < 2000; i++) {
+			buffer.append("line ").append(i * 7919 % 1000).append(": the quick brown fox\n");
+		}
+		byte[] text = buffer.toString().getBytes();
+		Random random = new Random(1);
+		byte[] runs = new byte[50000];
+		for (int i = 0; i < runs.length; ) {
+			byte b = (byte) random.nextInt(4);
+			for (int n = 1 + random.nextInt(400); n > 0 && i < runs.length; n--) {
+				runs[i++] = b;
+			}
+		}
+		
+		int[] strategies = {Deflater.S_FILTERED, Deflater.S_HUFFMAN_ONLY, Deflater.S_RLE, Deflater.S_FIXED};
+		for (byte[] data : new byte[][] {text, runs}) {
+			for (int strategy : strategies) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				Deflater deflater = new Deflater(null, new BitInputStream(new ByteArrayInputStream(data)), new BitOutputStream(out), strategy);
+				deflater.process();
+				CompressionStats stats = deflater.getStats();
+				if (strategy == Deflater.S_HUFFMAN_ONLY) {
+					assertEquals(0, stats.getMatchCount());
+					assertEquals(data.length, stats.getLiteralCount());
+				} else if (strategy != Deflater.S_RLE || data == runs) {
+					assertTrue(stats.getMatchCount() > 0);
+				}
+				if (strategy == Deflater.S_RLE && stats.getMatchCount() > 0) {
+					// Distances are at least 1, so an average of 1 means every match is at distance 1
+					assertEquals(1.0, stats.getAverageMatchDistance(), 0);
+				}
+				if (strategy == Deflater.S_FIXED) {
+					assertEquals(stats.getBlockCount(), stats.getBlockCount(1));
+				}
+				
+				// Decompress with java.util.zip
+				java.util.zip.Inflater inflater = new java.util.zip.Inflater(true);
+				inflater.setInput(out.toByteArray());
+				byte[] result = new byte[data.length];
+				assertEquals(data.length, inflater.inflate(result));
+				assertTrue(inflater.finished());
+				assertArrayEquals(data, result);
+			}
+		}
+	}
+	
+	/**
+	 * Test that the linear finder takes matches from its recent distances
+	 * for data that repeats at the same offsets, and reports them in the
+	 * statistics (other finders don't try recent distances).
+	 */
+	@Test
+	public void testRecentDistances() throws Exception {
+		// Fixed-width records, so most matches are at a distance of one or two records
+		StringBuffer buffer = new StringBuffer();
+		for (int i = 0; i < 2000; i++) {
+			buffer.append(String.format("%05d,north,%03d,pending,2024-01-01,warehouse-%d,checked\n", i, i * 7919 % 1000, i % 3));
+		}
+		byte[] data = buffer.toString().getBytes();
+		
+		for (int finder = Deflater.F_LINEAR; finder <= Deflater.F_BINARY_TREE; finder++) {
+			GZCompressor gz = new GZCompressor("test", data.length, false);
+			gz.setMatchFinder(finder);
+			CompressionStats stats = gz.compress(new ByteArrayInputStream(data), new ByteArrayOutputStream());
+			assertTrue(stats.getSearchCount() > 0);
+			if (finder == Deflater.F_LINEAR) {
+				assertTrue(stats.getRecentHits() > stats.getMatchCount() / 4);
+				assertTrue(stats.getRecentEarlyHits() > 0);
+				assertTrue(stats.getRecentEarlyHits() <= stats.getRecentHits());
+				assertTrue(stats.toString().contains("Recent distances matched"));
+			} else {
+				assertEquals(0, stats.getRecentHits());
+			}
+		}
+	}
+	
+	/**
+	 * Test that the compressor and decompressor report the same blocks and
+	 * symbols for a stream, that the symbols cover the data, and that the
+	 * decompressor times the checksum.
+	 */
+	@Test
+	public void testCompressionStats() throws Exception {
+		StringBuffer buffer = new StringBuffer();
+		for (int i = 0; i < 2000; i++) {
+			buffer.append("line ").append(i * 7919 % 1000).append(": the quick brown fox\n");
+		}
+		byte[] data = buffer.toString().getBytes();
+		
+		ZLibCompressor zlib = new ZLibCompressor();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		CompressionStats c = zlib.compress(new ByteArrayInputStream(data), out);
+		ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+		CompressionStats d = zlib.decompress(new ByteArrayInputStream(out.toByteArray()), decompressed);
+		assertArrayEquals(data, decompressed.toByteArray());
+		
+		assertEquals(data.length, c.getBytesIn());
+		assertEquals(out.size(), c.getBytesOut());
+		assertEquals(c.getBlockCount(), d.getBlockCount());
+		assertEquals(c.getBlockCount(2), d.getBlockCount(2));
+		assertEquals(c.getHeaderBits(), d.getHeaderBits());
+		assertEquals(c.getLiteralCount(), d.getLiteralCount());
+		assertEquals(c.getMatchCount(), d.getMatchCount());
+		assertEquals(data.length, c.getLiteralCount() + Math.round(c.getMatchCount() * c.getAverageMatchLength()));
+		assertTrue(c.getPhaseNanos(CompressionStats.T_MATCH) > 0);
+		assertTrue(d.getPhaseNanos(CompressionStats.T_DECODE) > 0);
+		assertEquals(0, d.getBlockCount(0));
+		// The checksum is timed for Huffman blocks too
+		assertTrue(d.getPhaseNanos(CompressionStats.T_CHECKSUM) > 0);
+	}
+	
+	/**
+	 * Test that reused deflaters and inflaters give the same output as new
+	 * ones, and that the pool refuses codecs it can't safely hand out again.
+	 */
+	@Test
+	public void testCodecReuse() throws Exception {
+		byte[][] inputs = new byte[4][];
+		for (int m = 0; m < inputs.length; m++) {
+			StringBuffer buffer = new StringBuffer();
+			for (int i = 0; i < 500 * m; i++) {
+				buffer.append("message ").append(m).append(", line ").append(i * 7919 % 1000).append("\n");
+			}
+			inputs[m] = buffer.toString().getBytes();
+		}
+		
+		CodecPool pool = new CodecPool(1);
+		for (int finder = Deflater.F_LINEAR; finder <= Deflater.F_BINARY_TREE; finder++) {
+			for (int round = 0; round < 2; round++) {
+				for (byte[] data : inputs) {
+					ByteArrayOutputStream expected = new ByteArrayOutputStream();
+					Deflater fresh = new Deflater(null, new BitInputStream(new ByteArrayInputStream(data)), new BitOutputStream(expected));
+					fresh.setMatchFinder(finder);
+					fresh.process();
+					
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+					Deflater deflater = pool.takeDeflater(null, new BitInputStream(new ByteArrayInputStream(data)), new BitOutputStream(out), Deflater.S_DEFAULT, finder);
+					deflater.process();
+					assertArrayEquals(expected.toByteArray(), out.toByteArray());
+					assertEquals(fresh.getChecksumValue(), deflater.getChecksumValue());
+					assertEquals(fresh.getStats().getMatchCount(), deflater.getStats().getMatchCount());
+					pool.giveBack(deflater);
+					
+					ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+					Inflater inflater = pool.takeInflater(null, new BitInputStream(new ByteArrayInputStream(out.toByteArray())), new BitOutputStream(decompressed));
+					inflater.process();
+					assertArrayEquals(data, decompressed.toByteArray());
+					assertEquals(fresh.getChecksumValue(), inflater.getChecksumValue());
+					pool.giveBack(inflater);
+					
+					// Switch the reused deflater to Adler-32, as zlib streams do (the next stream is back to CRC-32)
+					Deflater zlib = pool.takeDeflater(null, new BitInputStream(new ByteArrayInputStream(data)), new BitOutputStream(new ByteArrayOutputStream()), Deflater.S_DEFAULT, finder);
+					zlib.useAdler32();
+					zlib.process();
+					assertEquals(ZLibCompressor.adler32(data), zlib.getChecksumValue());
+					pool.giveBack(zlib);
+				}
+			}
+		}
+		assertEquals(1, pool.getIdleDeflaters());
+		assertEquals(1, pool.getIdleInflaters());
+		
+		// Deflaters with the same buffer and window sizes are shared, and take on the new options
+		DeflaterOptions fixed = DeflaterOptions.DEFAULT.withMode(Deflater.M_FIXED).withDebug(true);
+		Deflater deflater = pool.takeDeflater(null, null, null, Deflater.S_DEFAULT, Deflater.F_LINEAR);
+		pool.giveBack(deflater);
+		assertSame(deflater, pool.takeDeflater(null, null, null, Deflater.S_DEFAULT, Deflater.F_LINEAR, fixed));
+		assertEquals(fixed, deflater.getOptions());
+		pool.giveBack(deflater);
+		assertNotSame(deflater, pool.takeDeflater(null, null, null, Deflater.S_DEFAULT, Deflater.F_LINEAR, fixed.withWindowSize(512)));
+		
+		// A codec can't be given back twice, and deflaters with off-heap tables can't be given back at all
+		try {
+			pool.giveBack(deflater);
+			fail("Deflater was given back twice");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+		Inflater inflater = pool.takeInflater(null, null, null);
+		pool.giveBack(inflater);
+		try {
+			pool.giveBack(inflater);
+			fail("Inflater was given back twice");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+		deflater = pool.takeDeflater(null, null, null, Deflater.S_DEFAULT, Deflater.F_LINEAR, fixed);
+		deflater.setMatchFinder(Deflater.F_HASH_CHAIN, new TableAllocator() {
+			public boolean isOffHeap() {
+				return true;
+			}
+		});
+		try {
+			pool.giveBack(deflater);
+			fail("Deflater with off-heap tables was pooled");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+		assertEquals(0, pool.getIdleDeflaters());
+		assertEquals(1, pool.getIdleInflaters());
+	}
+	
+	/**
+	 * Test that differently configured compressors running on many threads
+	 * at once, sharing a codec pool, give the same output as on one thread.
+	 */
+	@Test
+	public void testConcurrentCompression() throws Exception {
+		Random random = new Random(1);
+		byte[][] inputs = new byte[3][];
+		StringBuffer buffer = new StringBuffer();
+		for (int i = 0; i < 1500; i++) {
+			buffer.append("line ").append(i * 7919 % 1000).append(": the quick brown fox\n");
+		}
+		inputs[0] = buffer.toString().getBytes();
+		inputs[1] = new byte[20000];
+		for (int i = 0; i < inputs[1].length; i++) {
+			inputs[1][i] = (byte) ('0' + random.nextInt(10));
+		}
+		inputs[2] = new byte[0];
+		
+		final DeflaterOptions[] options = {
+			DeflaterOptions.DEFAULT,
+			DeflaterOptions.DEFAULT.withWindowSize(4096).withBufferSize(1000),
+			DeflaterOptions.DEFAULT.withMode(Deflater.M_FIXED),
+			DeflaterOptions.DEFAULT.withWindowSize(32768).withLZ77(false),
+			DeflaterOptions.DEFAULT.withLZ77(false)
+		};
+		final int[] finders = {Deflater.F_LINEAR, Deflater.F_HASH_CHAIN, Deflater.F_BINARY_TREE, Deflater.F_HASH_CHAIN, Deflater.F_LINEAR};
+		
+		// Compress each input with each setting on one thread
+		final byte[][][] expected = new byte[options.length][inputs.length][];
+		for (int s = 0; s < options.length; s++) {
+			for (int i = 0; i < inputs.length; i++) {
+				expected[s][i] = gzip(inputs[i], options[s], finders[s], new CodecPool(0));
+			}
+		}
+		
+		// Then all at once on eight threads, each taking the settings in a different order
+		final CodecPool pool = new CodecPool(4);
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<Void>> results = new ArrayList<Future<Void>>();
+		for (int t = 0; t < 8; t++) {
+			final int first = t;
+			results.add(executor.submit(() -> {
+				start.await();
+				for (int n = 0; n < 3 * options.length; n++) {
+					int s = (first + n) % options.length;
+					for (int i = 0; i < inputs.length; i++) {
+						byte[] compressed = gzip(inputs[i], options[s], finders[s], pool);
+						assertArrayEquals(expected[s][i], compressed);
+						GZCompressor gz = new GZCompressor("test", -1, false);
+						gz.setCodecPool(pool);
+						ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+						gz.decompress(new ByteArrayInputStream(compressed), decompressed);
+						assertArrayEquals(inputs[i], decompressed.toByteArray());
+					}
+				}
+				return null;
+			}));
+		}
+		start.countDown();
+		try {
+			for (Future<Void> result : results) {
+				try {
+					result.get();
+				} catch (ExecutionException e) {
+					throw new AssertionError(e.getCause());
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	/**
+	 * Test that a batch of byte arrays, buffers and files compresses to
+	 * valid zlib streams, that a missing file or a failure while
+	 * compressing fails only its own result, and that inputs racing close
+	 * are either compressed or refused.
+	 */
+	@Test
+	public void testBatchCompressor() throws Exception {
+		List<Object> inputs = new ArrayList<Object>();
+		List<byte[]> expected = new ArrayList<byte[]>();
+		for (int m = 0; m < 50; m++) {
+			byte[] data = ("object " + m + ": the quick brown fox jumps over the lazy dog\n").repeat(m).getBytes();
+			expected.add(data);
+			inputs.add((m % 2 == 0) ? data : ByteBuffer.wrap(data));
+		}
+		File file = File.createTempFile("deflate", ".txt");
+		byte[] fileData = "file contents, file contents, file contents\n".getBytes();
+		Files.write(file.toPath(), fileData);
+		inputs.add(file.toPath());
+		expected.add(fileData);
+		inputs.add(new File(file.getPath() + ".missing").toPath());
+		
+		List<CompletableFuture<BatchCompressor.Result>> results;
+		try (BatchCompressor batch = new BatchCompressor(4)) {
+			results = batch.compressAll(inputs);
+			for (int i = 0; i < expected.size(); i++) {
+				BatchCompressor.Result result = results.get(i).get();
+				ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+				new ZLibCompressor().decompress(new ByteArrayInputStream(result.getBytes()), decompressed);
+				assertArrayEquals(expected.get(i), decompressed.toByteArray());
+				assertEquals(expected.get(i).length, result.getStats().getBytesIn());
+			}
+			try {
+				results.get(expected.size()).get();
+				fail("Missing file was compressed");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof IOException);
+			}
+		} finally {
+			file.delete();
+		}
+		
+		// A failure while compressing one input fails only its own result
+		CodecPool failing = new CodecPool(4) {
+			private int takes;
+			
+			public Deflater takeDeflater(ProgressMeter progress, BitInputStream in, BitOutputStream out, int strategy, int finder, DeflaterOptions options) {
+				synchronized (this) {
+					if (++takes == 10) {
+						throw new IllegalStateException("No deflater");
+					}
+				}
+				return super.takeDeflater(progress, in, out, strategy, finder, options);
+			}
+		};
+		try (BatchCompressor batch = new BatchCompressor(4)) {
+			batch.setCodecPool(failing);
+			results = batch.compressAll(expected);
+			int failures = 0;
+			for (int i = 0; i < expected.size(); i++) {
+				try {
+					ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+					new ZLibCompressor().decompress(new ByteArrayInputStream(results.get(i).get().getBytes()), decompressed);
+					assertArrayEquals(expected.get(i), decompressed.toByteArray());
+				} catch (ExecutionException e) {
+					assertTrue(e.getCause() instanceof IllegalStateException);
+					failures++;
+				}
+			}
+			assertEquals(1, failures);
+		}
+		
+		// Inputs submitted while the compressor is closing either run or are refused with IllegalStateException
+		BatchCompressor closing = new BatchCompressor(2);
+		List<CompletableFuture<BatchCompressor.Result>> accepted = Collections.synchronizedList(new ArrayList<CompletableFuture<BatchCompressor.Result>>());
+		CompletableFuture<Throwable> refused = CompletableFuture.supplyAsync(() -> {
+			while (true) {
+				try {
+					accepted.add(closing.compress(fileData));
+				} catch (Throwable e) {
+					return e;
+				}
+			}
+		});
+		while (accepted.size() < 100) {
+			Thread.sleep(1);
+		}
+		closing.close();
+		assertTrue(refused.get() instanceof IllegalStateException);
+		for (CompletableFuture<BatchCompressor.Result> result : accepted) {
+			assertTrue(result.isDone());
+			assertTrue(result.get().getBytes().length > 0);
+		}
+	}
+	
+	private static byte[] gzip(byte[] data, DeflaterOptions options, int finder, CodecPool pool) {
+		GZCompressor gz = new GZCompressor("test", data.length, false);
+		gz.setOptions(options);
+		gz.setMatchFinder(finder);
+		gz.setCodecPool(pool);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		gz.compress(new ByteArrayInputStream(data), out);
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Test that a flight recording gets an event for each block and stream.
+	 */
+	@Test
+	public void testFlightRecorderEvents() throws Exception {
+		StringBuffer buffer = new StringBuffer();
+		for (int i = 0; i < 20000; i++) {
+			buffer.append("line ").append(i * 7919 % 10000).append(": the quick brown fox\n");
+		}
+		byte[] data = buffer.toString().getBytes();
+		
+		File file = File.createTempFile("deflate", ".jfr");
+		CompressionStats stats;
+		try (Recording recording = new Recording()) {
+			recording.enable("deflate.Block").withoutThreshold();
+			recording.enable("deflate.Stream").withoutThreshold();
+			recording.start();
+			stats = new ZLibCompressor().compress(new ByteArrayInputStream(data), new ByteArrayOutputStream());
+			recording.stop();
+			recording.dump(file.toPath());
+		}
+		
+		int blocks = 0;
+		int streams = 0;
+		for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+			String name = event.getEventType().getName();
+			if (name.equals("deflate.Block")) {
+				blocks++;
+			} else if (name.equals("deflate.Stream")) {
+				streams++;
+				assertEquals(data.length, event.getLong("rawSize"));
+			}
+		}
+		file.delete();
+		assertTrue(stats.getBlockCount() > 1);
+		assertEquals(stats.getBlockCount(), blocks);
+		assertEquals(1, streams);
+	}
+	
+	private byte[] deflate(byte[] data, int strategy) throws IOException {
+		return deflate(data, strategy, DeflaterOptions.DEFAULT);
+	}
+	
+	private byte[] deflate(byte[] data, int strategy, DeflaterOptions options) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BitOutputStream output = new BitOutputStream(out);
+		Deflater deflater = new Deflater(null, new BitInputStream(new ByteArrayInputStream(data)), output, strategy, options);
+		deflater.process();
+		return out.toByteArray();
+	}
+	
 	/**
 	 * Test Huffman tree balancing for length-limited codes.
 	 */
@@ -72,61 +667,544 @@ public class UnitTests {
 	}
 	
 	/**
-	 * Test cases for LZ77 window searching.
+	 * Test that dynamic block headers are trimmed (HLIT, HDIST and HCLEN
+	 * each end at a used code), and that a run of codelengths carried from
+	 * the literal table into the distance table is read by java.util.zip.
 	 */
 	@Test
-	public void testLZ77() {
-		testLZ77Case(
-				"abcdefghijAabcdefBCDdefEFG",
-				"abcdefghijA<11,6>BCD<6,3>EFG"
-		);
-		testLZ77Case(
-				"abcde bcde bcde bcde bcde 123",
-				"abcde <5,20>123"
-		);
-		testLZ77Case(
-				"abcdebcdef",
-				"abcde<4,4>f"
-		);
-		testLZ77Case(
-				"Blah blah blah blah blah!",
-				"Blah b<5,18>!"
-		);
-		testLZ77Case(
-				"This is a string with multiple strings within it",
-				"This <3,3>a string with multiple<21,7>s<22,5>in it"
-		);
-		testLZ77Case(
-				"This is a string of text, whereherehereherehe parts of the string have text that is in other parts of the string",
-				"This <3,3>a string of text, where<4,14> parts<35,5><13,3><49,7>have<51,5><21,3>at<76,4>in o<33,3>r<47,20>"
-		);
+	public void testDynamicHeader() throws Exception {
 		StringBuffer buffer = new StringBuffer();
-		for (int i = 0; i < 25; i++) {
-			buffer.append("0123456789");
+		for (int i = 0; i < 2000; i++) {
+			buffer.append("row " + (i * 7919 % 1000) + ", abcab" + (i % 13) + " abcabcab;\n");
+		}
+		byte[] text = buffer.toString().getBytes();
+		
+		// Runs of 508 bytes at 8 distances, so lengths 227-258 and distance codes 0-7 all get 3-bit codes
+		Random random = new Random(1);
+		ByteArrayOutputStream runs = new ByteArrayOutputStream();
+		int[] dists = {1, 2, 3, 4, 5, 7, 9, 13};
+		for (int u = 0; u < 400; u++) {
+			int d = dists[u % dists.length];
+			byte[] run = new byte[d + 508];                         // d distinct bytes, then copies
+			for (int k = 0; k < d; k++) {
+				run[k] = (byte) (32 + k * 16 + random.nextInt(16));
+			}
+			for (int k = d; k < run.length; k++) {
+				run[k] = run[k - d];
+			}
+			runs.write(run, 0, run.length);
+		}
+		
+		for (byte[] data : new byte[][] {text, runs.toByteArray()}) {
+			byte[] compressed = deflate(data, Deflater.S_DEFAULT, DeflaterOptions.DEFAULT.withMode(Deflater.M_DYNAMIC));
+			BitInputStream in = new BitInputStream(new ByteArrayInputStream(compressed));
+			Inflater inflater = new Inflater(null, in, null);
+			assertEquals(5, in.readBits(3));                        // Final dynamic block
+			int numLit = 257 + in.readBits(5);
+			int numDist = 1 + in.readBits(5);
+			int numLen = 4 + in.readBits(4);
+			
+			// Read the length codelengths (in the order they are sent)
+			int[] order = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+			int[] lenCodeLen = new int[order.length];
+			for (int i = 0; i < numLen; i++) {
+				lenCodeLen[order[i]] = in.readBits(3);
+			}
+			assertTrue(lenCodeLen[order[numLen - 1]] > 0);
+			
+			// Unpack the literal/distance codelengths, counting runs that cross between the tables
+			List<Integer> codes = inflater.buildCodes(lenCodeLen);
+			Map<Integer, List<Integer>> codeMap = inflater.buildCodeMap(codes, lenCodeLen);
+			int[] codeLen = new int[numLit + numDist];
+			int crossing = 0;
+			for (int i = 0; i < codeLen.length; ) {
+				int sym = inflater.readSymbol(codes, codeMap);
+				int n = 1;
+				if (sym == 16) {
+					n = 3 + in.readBits(2);
+					sym = codeLen[i - 1];
+				} else if (sym == 17) {
+					n = 3 + in.readBits(3);
+					sym = 0;
+				} else if (sym == 18) {
+					n = 11 + in.readBits(7);
+					sym = 0;
+				}
+				if (n > 1 && i < numLit && i + n > numLit) {
+					crossing++;
+				}
+				Arrays.fill(codeLen, i, i + n, sym);
+				i += n;
+			}
+			assertTrue(codeLen[numLit - 1] > 0);
+			assertTrue(codeLen[numLit + numDist - 1] > 0);
+			assertTrue(numDist < 30);
+			assertTrue(numLen < 19);
+			if (data == text) {
+				assertTrue(numLit < 286);
+			} else {
+				assertTrue(crossing > 0);
+			}
+			
+			// Decompress with java.util.zip
+			java.util.zip.Inflater zip = new java.util.zip.Inflater(true);
+			zip.setInput(compressed);
+			byte[] result = new byte[data.length];
+			assertEquals(data.length, zip.inflate(result));
+			assertArrayEquals(data, result);
+		}
+	}
+	
+	/**
+	 * Test that dynamic blocks are split near where the statistics of the
+	 * data change, that splitting makes the output smaller, and that no
+	 * block is larger than the deflater's block buffer.
+	 */
+	@Test
+	public void testBlockSplitting() throws Exception {
+		// Text, then random bytes, then different text
+		StringBuffer buffer = new StringBuffer();
+		for (int i = 0; buffer.length() < 50000; i++) {
+			buffer.append("line ").append(i * 7919 % 1000).append(": the quick brown fox\n");
+		}
+		byte[] head = buffer.toString().getBytes();
+		byte[] noise = new byte[20000];
+		new Random(1).nextBytes(noise);
+		buffer = new StringBuffer();
+		for (int i = 0; buffer.length() < 50000; i++) {
+			buffer.append("row ").append(i * 7919 % 1000).append(", jumps over the lazy dog\n");
+		}
+		byte[] tail = buffer.toString().getBytes();
+		ByteArrayOutputStream mixed = new ByteArrayOutputStream();
+		mixed.write(head);
+		mixed.write(noise);
+		mixed.write(tail);
+		byte[] data = mixed.toByteArray();
+		
+		// Without splitting, the data fits in one block
+		DeflaterOptions options = DeflaterOptions.DEFAULT.withMode(Deflater.M_DYNAMIC);
+		ByteArrayOutputStream single = new ByteArrayOutputStream();
+		Deflater deflater = new Deflater(null, new BitInputStream(new ByteArrayInputStream(data)), new BitOutputStream(single),
+				Deflater.S_DEFAULT, options.withBlockSplitting(false));
+		deflater.process();
+		assertEquals(1, deflater.getStats().getBlockCount());
+		
+		// With splitting, a block ends within a few KB of each change
+		ByteArrayOutputStream split = new ByteArrayOutputStream();
+		deflater = new Deflater(null, new BitInputStream(new ByteArrayInputStream(data)), new BitOutputStream(split),
+				Deflater.S_DEFAULT, options);
+		deflater.process();
+		assertTrue(split.size() < single.size());
+		CompressionStats stats = deflater.getStats();
+		long[] ends = new long[stats.getBlockCount()];
+		long end = 0;
+		for (int i = 0; i < ends.length; i++) {
+			assertEquals(2, stats.getBlockType(i));
+			end += stats.getBlockSize(i);
+			ends[i] = end;
+		}
+		assertEquals(data.length, end);
+		for (long change : new long[] {head.length, head.length + noise.length}) {
+			boolean found = false;
+			for (long e : ends) {
+				found |= Math.abs(e - change) <= 4096;
+			}
+			assertTrue(found);
+		}
+		
+		// The decompressor reads back the same blocks
+		ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+		Inflater inflater = new Inflater(null, new BitInputStream(new ByteArrayInputStream(split.toByteArray())), new BitOutputStream(decompressed));
+		inflater.process();
+		assertArrayEquals(data, decompressed.toByteArray());
+		assertEquals(stats.getBlockCount(), inflater.getStats().getBlockCount());
+		for (int i = 0; i < ends.length; i++) {
+			assertEquals(stats.getBlockType(i), inflater.getStats().getBlockType(i));
+			assertEquals(stats.getBlockSize(i), inflater.getStats().getBlockSize(i));
+		}
+		
+		// Long runs of similar data are cut at the block buffer size (256 KiB)
+		buffer = new StringBuffer();
+		for (int i = 0; buffer.length() < 1000000; i++) {
+			buffer.append("row ").append(i * 7919 % 1000).append(", jumps over the lazy dog\n");
+		}
+		data = buffer.toString().getBytes();
+		deflater = new Deflater(null, new BitInputStream(new ByteArrayInputStream(data)), new BitOutputStream(new ByteArrayOutputStream()),
+				Deflater.S_DEFAULT, options);
+		deflater.process();
+		stats = deflater.getStats();
+		assertTrue(stats.getBlockCount() >= 4);
+		for (int i = 0; i < stats.getBlockCount(); i++) {
+			assertTrue(stats.getBlockSize(i) <= 262144);
+		}
+	}
+	
+	/**
+	 * Test the policy for incompressible data: random data is stored (only
+	 * in the cheapest mode, otherwise it is Huffman coded without LZ77), and
+	 * compressible data after it gets LZ77 back once the probing backs off.
+	 */
+	@Test
+	public void testIncompressiblePolicy() throws Exception {
+		byte[] noise = new byte[200000];
+		new Random(1).nextBytes(noise);
+		StringBuffer buffer = new StringBuffer();
+		for (int i = 0; buffer.length() < 400000; i++) {
+			buffer.append("line ").append(i * 7919 % 1000).append(": the quick brown fox\n");
+		}
+		byte[] text = buffer.toString().getBytes();
+		
+		// Random data alone is stored (with an empty final block after it)
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Deflater deflater = new Deflater(null, new BitInputStream(new ByteArrayInputStream(noise)), new BitOutputStream(out));
+		deflater.process();
+		assertEquals(noise.length, deflater.getPolicyBytes(2));     // Stored
+		assertEquals(0, deflater.getStats().getMatchCount());
+		assertEquals(deflater.getStats().getBlockCount() - 1, deflater.getStats().getBlockCount(0));
+		assertTrue(out.size() < noise.length + 100);
+		
+		// Text after it gets LZ77 back, at most MAX_BACKOFF (8) skipped refills of 32 KiB later
+		ByteArrayOutputStream mixed = new ByteArrayOutputStream();
+		mixed.write(noise);
+		mixed.write(text);
+		byte[] data = mixed.toByteArray();
+		out = new ByteArrayOutputStream();
+		deflater = new Deflater(null, new BitInputStream(new ByteArrayInputStream(data)), new BitOutputStream(out));
+		deflater.process();
+		assertTrue(deflater.getPolicyBytes(0) >= text.length - 8 * 32768); // Normal
+		assertTrue(deflater.getPolicyBytes(2) >= noise.length);
+		assertTrue(deflater.getStats().getMatchCount() > 0);
+		assertTrue(deflater.getStats().getBlockCount(2) > 0);
+		ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+		new Inflater(null, new BitInputStream(new ByteArrayInputStream(out.toByteArray())), new BitOutputStream(decompressed)).process();
+		assertArrayEquals(data, decompressed.toByteArray());
+		
+		// Other modes never store it, but still skip LZ77
+		for (int mode = Deflater.M_FIXED; mode <= Deflater.M_DYNAMIC; mode++) {
+			deflater = new Deflater(null, new BitInputStream(new ByteArrayInputStream(noise)), new BitOutputStream(new ByteArrayOutputStream()),
+					Deflater.S_DEFAULT, DeflaterOptions.DEFAULT.withMode(mode));
+			deflater.process();
+			assertEquals(0, deflater.getPolicyBytes(2));
+			assertEquals(noise.length, deflater.getPolicyBytes(1)); // Huffman only
+			assertEquals(0, deflater.getStats().getBlockCount(0));
+			assertEquals(0, deflater.getStats().getMatchCount());
+		}
+	}
+	
+	/**
+	 * Test that tiny read buffers, where matches run across each refill,
+	 * give the same output as the default buffer.
+	 */
+	@Test
+	public void testBufferRefill() throws Exception {
+		// Long matches (up to 258 bytes) every few hundred bytes
+		Random random = new Random(1);
+		byte[] data = new byte[20000];
+		for (int i = 0; i < data.length; ) {
+			if (i >= 300 && random.nextInt(3) > 0) {
+				int dist = 1 + random.nextInt(256);
+				int len = Math.min(3 + random.nextInt(300), data.length - i);
+				for (int k = 0; k < len; k++, i++) {
+					data[i] = data[i - dist];
+				}
+			} else {
+				data[i++] = (byte) ('a' + random.nextInt(26));
+			}
+		}
+		
+		for (int finder = Deflater.F_LINEAR; finder <= Deflater.F_BINARY_TREE; finder++) {
+			byte[] expected = null;
+			for (int bufferSize : new int[] {32768, 300, 1}) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				Deflater deflater = new Deflater(null, new BitInputStream(new ByteArrayInputStream(data)), new BitOutputStream(out),
+						Deflater.S_DEFAULT, DeflaterOptions.DEFAULT.withBufferSize(bufferSize));
+				deflater.setMatchFinder(finder);
+				deflater.process();
+				if (expected == null) {
+					expected = out.toByteArray();
+					assertTrue(deflater.getStats().getAverageMatchLength() > 20);
+				}
+				assertArrayEquals(expected, out.toByteArray());
+				
+				ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+				new Inflater(null, new BitInputStream(new ByteArrayInputStream(out.toByteArray())), new BitOutputStream(decompressed)).process();
+				assertArrayEquals(data, decompressed.toByteArray());
+			}
+		}
+	}
+	
+	/**
+	 * Test that the stored, fixed and dynamic block sizes that the cheapest
+	 * mode compares are the sizes of the blocks actually written.
+	 */
+	@Test
+	public void testBlockSizes() throws Exception {
+		StringBuffer buffer = new StringBuffer();
+		for (int i = 0; i < 120; i++) {
+			buffer.append("line ").append(i * 7919 % 1000).append(": the quick brown fox\n");
+		}
+		byte[] data = buffer.toString().getBytes();
+		
+		// Capture the sizes printed for the block
+		PrintStream stdout = System.out;
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		byte[] cheapest;
+		try {
+			System.setOut(new PrintStream(log, true));
+			cheapest = deflate(data, Deflater.S_DEFAULT, DeflaterOptions.DEFAULT.withDebug(true));
+		} finally {
+			System.setOut(stdout);
+		}
+		Matcher m = Pattern.compile("Block costs: stored = (\\d+), fixed = (\\d+), dynamic = (\\d+) bits").matcher(log.toString());
+		assertTrue(m.find());
+		long[] sizes = {Long.parseLong(m.group(1)), Long.parseLong(m.group(2)), Long.parseLong(m.group(3))};
+		assertFalse(m.find());
+		
+		// Write the block as each type, and count the bits read back
+		long smallest = Long.MAX_VALUE;
+		for (int mode = Deflater.M_STORED; mode <= Deflater.M_DYNAMIC; mode++) {
+			byte[] compressed = deflate(data, Deflater.S_DEFAULT, DeflaterOptions.DEFAULT.withMode(mode));
+			BitInputStream in = new BitInputStream(new ByteArrayInputStream(compressed));
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			new Inflater(null, in, new BitOutputStream(out)).process();
+			assertArrayEquals(data, out.toByteArray());
+			assertEquals(sizes[mode], in.getBitCount());
+			assertEquals((sizes[mode] + 7) / 8, compressed.length);
+			smallest = Math.min(smallest, compressed.length);
+		}
+		assertEquals(smallest, cheapest.length);
+	}
+	
+	/**
+	 * Inputs and their LZ77 parses, as (distance, length) pairs between literals.
+	 */
+	private static final String[][] LZ77_CASES = {
+		{"abcdefghijAabcdefBCDdefEFG", "abcdefghijA<11,6>BCD<6,3>EFG"},
+		{"abcde bcde bcde bcde bcde 123", "abcde <5,20>123"},
+		{"abcdebcdef", "abcde<4,4>f"},
+		{"Blah blah blah blah blah!", "Blah b<5,18>!"},
+		{"This is a string with multiple strings within it", "This <3,3>a string with multiple<21,7>s<22,5>in it"},
+		{"This is a string of text, whereherehereherehe parts of the string have text that is in other parts of the string",
+				"This <3,3>a string of text, where<4,14> parts<35,5><13,3><49,7>have<51,5><21,3>at<76,4>in o<33,3>r<47,20>"},
+		{"abcdefghij" + "0123456789".repeat(25) + "0123abcdefg", "abcdefghij0123456789<10,244><264,7>"},
+		{"These blah is blah blah blah!", "These blah is<8,6><5,9>!"}
+	};
+	
+	/**
+	 * Test cases for LZ77 window copying (decoding each parse).
+	 */
+	@Test
+	public void testLZ77() {
+		for (String[] c : LZ77_CASES) {
+			testLZ77Case(c[0], c[1]);
+		}
+	}
+	
+	/**
+	 * Test cases for LZ77 window searching (the linear finder's greedy parse).
+	 */
+	@Test
+	public void testLinearFinder() {
+		for (String[] c : LZ77_CASES) {
+			testLinearFinderCase(c[0], c[1]);
+		}
+	}
+	
+	/**
+	 * Test that the hash chain and binary tree finders find matches as long
+	 * as the linear search does, and that their matches are real.
+	 */
+	@Test
+	public void testMatchFinders() {
+		Random random = new Random(1);
+		byte[] buffer = new byte[20000];
+		for (int i = 0; i < buffer.length; i++) {
+			if (i >= 300 && random.nextInt(4) > 0) {
+				buffer[i] = buffer[i - 1 - random.nextInt(300)];    // Copy from up to 300 bytes back
+			} else {
+				buffer[i] = (byte) ('a' + random.nextInt(4));
+			}
+		}
+		
+		MatchFinder linear = new LinearFinder(256);
+		MatchFinder[] finders = {new HashChainFinder(256), new BinaryTreeFinder(256)};
+		int[] dists = new int[258];
+		int[] lens = new int[258];
+		for (int i = 0; i < buffer.length; i++) {
+			int n = linear.findAll(buffer, i, buffer.length, dists, lens);
+			int expected = (n > 0) ? lens[n - 1] : 0;
+			linear.add(1);
+			for (MatchFinder finder : finders) {
+				n = finder.findAll(buffer, i, buffer.length, dists, lens);
+				assertEquals(expected, (n > 0) ? lens[n - 1] : 0);
+				for (int j = 0; j < n; j++) {
+					assertTrue(dists[j] <= Math.min(i, 256));
+					for (int k = 0; k < lens[j]; k++) {
+						assertEquals(buffer[i - dists[j] + k], buffer[i + k]);
+					}
+				}
+				finder.add(1);
+			}
+		}
+	}
+	
+	/**
+	 * Test that the hash chain and binary tree finders give the same output
+	 * through IntTable (as with off-heap tables) as through heap arrays, for
+	 * each strategy, with data long enough to slide the window many times.
+	 */
+	@Test
+	public void testTableAllocator() throws Exception {
+		Random random = new Random(1);
+		byte[] data = new byte[300000];
+		for (int i = 0; i < data.length; i++) {
+			if (i >= 1000 && random.nextInt(4) > 0) {
+				data[i] = data[i - 1 - random.nextInt(1000)];       // Copy from up to 1000 bytes back
+			} else {
+				data[i] = (byte) ('a' + random.nextInt(16));
+			}
+		}
+		
+		for (int finder = Deflater.F_HASH_CHAIN; finder <= Deflater.F_BINARY_TREE; finder++) {
+			for (int strategy : new int[] {Deflater.S_DEFAULT, Deflater.S_OPTIMAL}) {
+				ByteArrayOutputStream expected = new ByteArrayOutputStream();
+				Deflater heap = new Deflater(null, new BitInputStream(new ByteArrayInputStream(data)), new BitOutputStream(expected), strategy);
+				heap.setMatchFinder(finder);
+				heap.process();
+				
+				CountingAllocator tables = new CountingAllocator();
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				Deflater deflater = new Deflater(null, new BitInputStream(new ByteArrayInputStream(data)), new BitOutputStream(out), strategy);
+				deflater.setMatchFinder(finder, tables);
+				deflater.process();
+				assertTrue(tables.reads > 0);                       // The tables were used through IntTable
+				assertArrayEquals(expected.toByteArray(), out.toByteArray());
+			}
+		}
+	}
+	
+	/**
+	 * Allocates tables that aren't stored in a plain int array (as off-heap
+	 * tables aren't), so that the match finders read them through IntTable,
+	 * and counts the reads.
+	 */
+	private static class CountingAllocator extends TableAllocator {
+		private long reads;
+		
+		public IntTable allocate(int size, int value) {
+			int[] values = new int[size];
+			Arrays.fill(values, value);
+			return new IntTable() {
+				public int get(int i) {
+					reads++;
+					return values[i];
+				}
+				
+				public void set(int i, int value) {
+					values[i] = value;
+				}
+				
+				public int size() {
+					return values.length;
+				}
+			};
+		}
+	}
+	
+	/**
+	 * Test that measuring matches a word at a time agrees with
+	 * a byte at a time, for every mismatch position and limit.
+	 */
+	@Test
+	public void testMatchLength() {
+		byte[] buffer = new byte[600];
+		for (int i = 0; i < buffer.length; i++) {
+			buffer[i] = (byte) (i % 37);
+		}
+		for (int k = 0; k < 300; k++) {
+			buffer[37 + k] ^= 0x40;                                 // Break the repeat k bytes in
+			for (int max = 0; max <= 258; max++) {
+				assertEquals(MatchLength.compareBytes(buffer, 0, 37, max), MatchLength.compare(buffer, 0, 37, max));
+			}
+			buffer[37 + k] ^= 0x40;
+		}
+	}
+	
+	/**
+	 * Test that the kernels in use (the vector ones when built with
+	 * -Pvector) agree with the scalar ones, for every mismatch position and
+	 * limit, and for window slides of every length up to a few vectors.
+	 */
+	@Test
+	public void testKernels() {
+		Kernels vector = Kernels.load(true);
+		Kernels scalar = new Kernels();
+		
+		byte[] buffer = new byte[600];
+		for (int i = 0; i < buffer.length; i++) {
+			buffer[i] = (byte) (i % 37);
+		}
+		for (int k = 0; k < 300; k++) {
+			buffer[37 + k] ^= 0x40;                                 // Break the repeat k bytes in
+			for (int max = 0; max <= 258; max++) {
+				assertEquals(scalar.matchLength(buffer, 0, 37, max), vector.matchLength(buffer, 0, 37, max));
+			}
+			buffer[37 + k] ^= 0x40;
+		}
+		
+		Random random = new Random(47);
+		byte[] data = new byte[1024];
+		random.nextBytes(data);
+		for (int len = 0; len <= 300; len++) {
+			for (int dist : new int[] {0, 1, 7, 64, 500}) {
+				byte[] expected = data.clone();
+				byte[] actual = data.clone();
+				scalar.copy(expected, dist + 100, expected, 100, len);
+				vector.copy(actual, dist + 100, actual, 100, len);
+				assertArrayEquals(expected, actual);
+				
+				expected = new byte[data.length];
+				actual = new byte[data.length];
+				scalar.copy(data, dist, expected, 3, len);
+				vector.copy(data, dist, actual, 3, len);
+				assertArrayEquals(expected, actual);
+			}
 		}
-		testLZ77Case(
-				"abcdefghij" + buffer.toString() + "0123abcdefg",
-				"abcdefghij0123456789<10,244><264,7>"
-		);
-		testLZ77Case(
-				"These blah is blah blah blah!",
-				"These blah is<8,6><5,9>!"
-		);
 	}
 	
 	private void testLZ77Case(String input, String expected) {
-		byte[] buffer = input.getBytes();
 		StringBuffer output = new StringBuffer();
 		LZWindow window = new LZWindow(32768);
 		
+		Matcher m = Pattern.compile("<(\\d+),(\\d+)>|(.)", Pattern.DOTALL).matcher(expected);
+		while (m.find()) {
+			if (m.group(3) != null) {
+				byte b = (byte) m.group(3).charAt(0);
+				window.add(b);
+				output.append((char) b);
+			} else {
+				byte[] b = window.getBytes(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)));
+				window.add(b);
+				output.append(new String(b));
+			}
+		}
+		
+		assertEquals(input, output.toString());
+	}
+	
+	private void testLinearFinderCase(String input, String expected) {
+		byte[] buffer = input.getBytes();
+		StringBuffer output = new StringBuffer();
+		LinearFinder window = new LinearFinder(32768);
+		
 		for (int i = 0; i < buffer.length; i++) {
 			LZPair pair = window.find(buffer, i, buffer.length);
 			if (pair != null) {
-				window.add(buffer, i, pair.len);
+				window.add(pair.len);
 				i += (pair.len - 1);
 				output.append(String.format("<%d,%d>", pair.dist, pair.len));
 			} else {
-				window.add(buffer[i]);
+				window.add(1);
 				output.append((char) buffer[i]);
 			}
 		}
@@ -0,0 +1,386 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.text.NumberFormat;
+
+/**
+ * Implements the zlib format for storing DEFLATE-compressed streams,
+ * with support for preset dictionaries.
+ * (see RFC 1950)
+ * @author Ridge Shrubsall (21112211)
+ */
+public class ZLibCompressor implements Compressor {
+	/*
+	 * Compression methods
+	 */
+	public static final int CM_DEFLATE = 8;
+	
+	/*
+	 * Header flags
+	 */
+	public static final int F_DICT = 32;
+	
+	/*
+	 * Compression level (2 = default algorithm)
+	 */
+	private static final int FLEVEL = 2;
+	
+	
+	/**
+	 * The output log.
+	 */
+	private StringBuffer log;
+	
+	/**
+	 * A number formatter for the output log.
+	 */
+	private NumberFormat fmt = NumberFormat.getNumberInstance();
+	
+	/**
+	 * The preset dictionary (or null if none), and its Adler-32 checksum.
+	 */
+	private byte[] dictionary;
+	private int dictId;
+	
+	/**
+	 * The deflater options.
+	 */
+	private DeflaterOptions options;
+	
+	/**
+	 * The listener for progress reports (or null if none).
+	 */
+	private ProgressListener listener;
+	
+	/**
+	 * The pool that deflaters and inflaters are taken from.
+	 */
+	private CodecPool pool;
+	
+	/**
+	 * Create a new ZLibCompressor, taking its codecs from the default pool.
+	 */
+	public ZLibCompressor() {
+		dictionary = null;
+		options = DeflaterOptions.DEFAULT;
+		pool = CodecPool.getDefault();
+	}
+	
+	/**
+	 * Set the pool that deflaters and inflaters are taken from.
+	 * @param pool The pool
+	 */
+	public void setCodecPool(CodecPool pool) {
+		this.pool = pool;
+	}
+	
+	/**
+	 * Set a preset dictionary, to be used for both compression and
+	 * decompression. Its Adler-32 checksum is stored in the header.
+	 * While a dictionary is set, streams are compressed with a window of
+	 * at least windowSizeFor(b), so that all of it (up to 32 KiB) can be
+	 * referred back to, whatever window size the options give.
+	 * @param b The dictionary (or null for none)
+	 */
+	public void setDictionary(byte[] b) {
+		dictionary = (b != null) ? b.clone() : null;
+		dictId = (b != null) ? adler32(b) : 0;
+	}
+	
+	/**
+	 * Set the deflater options (the compression mode, buffer and window sizes).
+	 * The window size is stored in the header. It is raised to hold the
+	 * preset dictionary, if there is one.
+	 * @param options The options
+	 */
+	public void setOptions(DeflaterOptions options) {
+		this.options = options;
+	}
+	
+	/**
+	 * Get the smallest window size (no smaller than the default) that holds
+	 * the whole of a preset dictionary. A dictionary longer than the window
+	 * is only used from its last window of bytes.
+	 * @param dict The dictionary (or null for none)
+	 * @return The window size
+	 */
+	public static int windowSizeFor(byte[] dict) {
+		int size = DeflaterOptions.DEFAULT.getWindowSize();
+		while (dict != null && size < dict.length && size < 32768) {
+			size <<= 1;
+		}
+		return size;
+	}
+	
+	/**
+	 * Set the listener for progress reports. The length of the input
+	 * is not known, so no time left is estimated.
+	 * @param listener The listener (or null for none)
+	 */
+	public void setProgressListener(ProgressListener listener) {
+		this.listener = listener;
+	}
+	
+	/**
+	 * Reads a series of bytes from an input stream and
+	 * executes a compression algorithm over those bytes, writing
+	 * the compressed data to the specified output stream.
+	 * @param in The input stream for the data
+	 * @param out The output stream for writing the compressed data
+	 * @return The statistics for the stream (with the information to be logged)
+	 */
+	public CompressionStats compress(InputStream in, OutputStream out) {
+		CompressionStats stats = null;
+		try {
+			stats = compressStream(in, out);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+		return stats;
+	}
+	
+	/**
+	 * Compress a stream as compress() does, but throw any error to the
+	 * caller instead of quitting (so that one bad stream of many doesn't
+	 * stop the rest).
+	 * @param in The input stream for the data
+	 * @param out The output stream for writing the compressed data
+	 * @return The statistics for the stream (with the information to be logged)
+	 * @throws IOException If the data can't be read or written
+	 */
+	public CompressionStats compressStream(InputStream in, OutputStream out) throws IOException {
+		log = new StringBuffer();
+		BitInputStream input = new BitInputStream(in);
+		BitOutputStream output = new BitOutputStream(out);
+		
+		// Widen the window to hold the dictionary
+		DeflaterOptions options = this.options;
+		if (options.getWindowSize() < windowSizeFor(dictionary)) {
+			options = options.withWindowSize(windowSizeFor(dictionary));
+		}
+		
+		// Write header
+		int cinfo = Math.max(0, Integer.numberOfTrailingZeros(options.getWindowSize()) - 8);
+		int cmf = (cinfo << 4) | CM_DEFLATE;
+		int flg = FLEVEL << 6;
+		if (dictionary != null) {
+			flg |= F_DICT;
+		}
+		flg += (31 - ((cmf << 8) | flg) % 31) % 31;                  // Check bits
+		output.writeByte(cmf);
+		output.writeByte(flg);
+		
+		// Write dictionary ID
+		ProgressMeter progress = (listener != null) ? new ProgressMeter(listener, -1) : null;
+		Deflater deflater = pool.takeDeflater(progress, input, output, Deflater.S_DEFAULT, Deflater.F_LINEAR, options);
+		deflater.useAdler32();
+		if (dictionary != null) {
+			writeIntBE(output, dictId);
+			deflater.setDictionary(dictionary);
+		}
+		
+		// Compress and write data
+		long size = deflater.process() + 4;
+		
+		// Write footer
+		writeIntBE(output, deflater.getChecksumValue());
+		
+		// Log statistics
+		long inSize = input.getCount();
+		if (progress != null) {
+			progress.finish(inSize, output.getCount());
+		}
+		CompressionStats stats = deflater.getStats();
+		stats.setSizes(inSize, size);
+		pool.giveBack(deflater);
+		long diff = inSize - size;
+		if (diff > 0) {
+			double ratio = (1 - ((double) size / inSize)) * 100;
+			log.append(String.format("Size reduced by %s bytes (%.1f%% total saving)", fmt.format(diff), ratio));
+		} else {
+			log.append(String.format("Size increased by %s bytes", fmt.format(-diff)));
+		}
+		stats.setLog(log.toString());
+		return stats;
+	}
+	
+	/**
+	 * Reads a series of bytes from a compressed stream and
+	 * executes a decompression algorithm over those bytes, writing
+	 * the decompressed data to the specified output stream.
+	 * @param in The input stream for the compressed data
+	 * @param out The output stream for writing the decompressed data
+	 * @return The statistics for the stream (with the information to be logged)
+	 */
+	public CompressionStats decompress(InputStream in, OutputStream out) {
+		log = new StringBuffer();
+		CompressionStats stats = new CompressionStats();
+		
+		BitInputStream input = new BitInputStream(in);
+		BitOutputStream output = new BitOutputStream(out);
+		try {
+			// Read header
+			int cmf = input.readByte();
+			int flg = input.readByte();
+			if (((cmf << 8) | flg) % 31 != 0) {
+				throw new AssertionError("Invalid header check bits");
+			}
+			if ((cmf & 0x0f) != CM_DEFLATE || (cmf >>> 4) > 7) {
+				throw new AssertionError("Unsupported compression method");
+			}
+			
+			// Check dictionary ID
+			ProgressMeter progress = (listener != null) ? new ProgressMeter(listener, -1) : null;
+			Inflater inflater = pool.takeInflater(progress, input, output);
+			inflater.useAdler32();
+			if ((flg & F_DICT) != 0) {
+				int id = readIntBE(input);
+				if (dictionary == null) {
+					throw new AssertionError(String.format("Preset dictionary required, ID = %08X", id));
+				}
+				if (id != dictId) {
+					throw new AssertionError(String.format("Dictionary mismatch, expected = %08X, actual = %08X", id, dictId));
+				}
+				inflater.setDictionary(dictionary);
+			}
+			
+			// Read and decompress data
+			long size = inflater.process();
+			
+			// Read footer
+			input.clearBits();
+			int f_adler = readIntBE(input);
+			
+			// Verify data
+			int adler = inflater.getChecksumValue();
+			if (adler != f_adler) {
+				throw new AssertionError(String.format("Adler-32 mismatch, expected = %08X, actual = %08X", f_adler, adler));
+			}
+			
+			// Log statistics
+			long inSize = input.getCount();
+			if (progress != null) {
+				progress.finish(inSize, size);
+			}
+			stats = inflater.getStats();
+			stats.setSizes(inSize, size);
+			pool.giveBack(inflater);
+			long diff = size - inSize;
+			if (diff > 0) {
+				double ratio = (1 - ((double) inSize / size)) * 100;
+				log.append(String.format("Size increased by %s bytes (%.1f%% space saving)", fmt.format(diff), ratio));
+			} else {
+				log.append(String.format("Size reduced by %s bytes", fmt.format(-diff)));
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+		stats.setLog(log.toString());
+		return stats;
+	}
+	
+	/**
+	 * Calculate the Adler-32 checksum of the given bytes.
+	 * @param b The byte array
+	 * @return The checksum value
+	 */
+	public static int adler32(byte[] b) {
+		Adler32 adler = new Adler32();
+		adler.update(b);
+		return adler.getValue();
+	}
+	
+	/**
+	 * Write a four-byte integer, most significant byte first.
+	 * @param out The output stream
+	 * @param v The integer value
+	 */
+	private static void writeIntBE(BitOutputStream out, int v) throws IOException {
+		out.writeByte((byte) (v >> 24));
+		out.writeByte((byte) (v >> 16));
+		out.writeByte((byte) (v >> 8));
+		out.writeByte((byte) (v));
+	}
+	
+	/**
+	 * Read a four-byte integer, most significant byte first.
+	 * @param in The input stream
+	 * @return The integer value
+	 */
+	private static int readIntBE(BitInputStream in) throws IOException {
+		return (in.readByte() << 24 | in.readByte() << 16 | in.readByte() << 8 | in.readByte());
+	}
+	
+	/**
+	 * Main method to compress/decompress from command line.
+	 * Options are 'c' to compress, 'd' to decompress, 'v' for verbose,
+	 * optionally followed by '-D' and the name of a dictionary file,
+	 * followed by the names of the input and output files.
+	 * e.g. java ZLibCompressor -vc -D dict.bin file.txt file.zz
+	 * will create a compressed file 'file.zz' corresponding to 'file.txt'
+	 * using the preset dictionary 'dict.bin' and give verbose output.
+	 */
+	public static void main(String[] args) {
+		// Check number of arguments
+		if (args.length != 3 && !(args.length == 5 && args[1].equals("-D"))) usage();
+		
+		// Parse flags
+		boolean verbose = args[0].contains("v");
+		boolean compress = args[0].contains("c");
+		boolean decompress = args[0].contains("d");
+		if (!(compress ^ decompress)) usage();
+		String inName = args[args.length - 2];
+		String outName = args[args.length - 1];
+		
+		try {
+			// Create compressor instance
+			ZLibCompressor zlib = new ZLibCompressor();
+			if (args.length == 5) {
+				byte[] dict = Files.readAllBytes(new File(args[2]).toPath());
+				zlib.setDictionary(dict);
+			}
+			
+			// Open streams
+			FileInputStream in = new FileInputStream(inName);
+			FileOutputStream out = new FileOutputStream(outName);
+			
+			// Perform compression/decompression
+			long startTime = System.currentTimeMillis();
+			CompressionStats info;
+			if (compress) {
+				info = zlib.compress(in, out);
+			} else {
+				info = zlib.decompress(in, out);
+			}
+			long endTime = System.currentTimeMillis();
+			
+			// Print statistics
+			if (verbose) {
+				System.out.println(info);
+				System.out.println(String.format("Took %.3f seconds", (endTime - startTime) / 1000.0));
+				System.out.println();
+			}
+			
+			// Close streams
+			in.close();
+			out.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Print usage and quit.
+	 */
+	private static void usage() {
+		System.out.println("Usage:");
+		System.out.println("\tjava ZLibCompressor -vcd [-D dict-file] [in-file] [out-file]");
+		System.out.println("Options:");
+		System.out.println("\t-v  verbose mode");
+		System.out.println("\t-c  compress");
+		System.out.println("\t-d  decompress");
+		System.out.println("\t-D  preset dictionary");
+		System.exit(1);
+	}
+}
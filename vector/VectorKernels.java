@@ -0,0 +1,81 @@
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The compressor's inner loops written with the incubating Vector API,
+ * using the widest vectors the CPU supports (32 bytes with AVX2, 64 with
+ * AVX-512). Each loop finishes with the scalar code. Counting bytes stays
+ * scalar: without a conflict-free scatter, a vector histogram only gains
+ * on runs of one byte. This needs
+ * --add-modules jdk.incubator.vector to compile and run, and is loaded
+ * through Kernels.load().
+ * @author Ridge Shrubsall (21112211)
+ */
+public class VectorKernels extends Kernels {
+	/**
+	 * The vector shape to use.
+	 */
+	private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+	
+	/**
+	 * The number of bytes in a vector.
+	 */
+	private static final int LANES = SPECIES.length();
+	
+	
+	/**
+	 * Get the name of these kernels.
+	 * @return The name
+	 */
+	public String getName() {
+		return "vector" + (LANES * 8);
+	}
+	
+	/**
+	 * Get the length of the match between two strings, comparing
+	 * a vector at a time.
+	 * @param b The data array
+	 * @param x The offset of the earlier string
+	 * @param y The offset of the later string
+	 * @param max The maximum length (both strings must have this many bytes)
+	 * @return The match length
+	 */
+	public int matchLength(byte[] b, int x, int y, int max) {
+		int len = 0;
+		while (len + LANES <= max) {
+			ByteVector u = ByteVector.fromArray(SPECIES, b, x + len);
+			ByteVector v = ByteVector.fromArray(SPECIES, b, y + len);
+			VectorMask<Byte> diff = u.compare(VectorOperators.NE, v);
+			if (diff.anyTrue()) {
+				return len + diff.firstTrue();
+			}
+			len += LANES;
+		}
+		return len + MatchLength.compare(b, x + len, y + len, max - len);
+	}
+	
+	/**
+	 * Copy bytes towards the front of an array (or to another array),
+	 * a vector at a time. Copying forwards is safe when the destination
+	 * is at or before the source.
+	 * @param src The source array
+	 * @param srcOff The source offset
+	 * @param dst The destination array
+	 * @param dstOff The destination offset (at most the source offset, if the same array)
+	 * @param len The number of bytes
+	 */
+	public void copy(byte[] src, int srcOff, byte[] dst, int dstOff, int len) {
+		if (src == dst && dstOff > srcOff) {
+			super.copy(src, srcOff, dst, dstOff, len);
+			return;
+		}
+		int i = 0;
+		while (i + LANES <= len) {
+			ByteVector.fromArray(SPECIES, src, srcOff + i).intoArray(dst, dstOff + i);
+			i += LANES;
+		}
+		super.copy(src, srcOff + i, dst, dstOff + i, len - i);
+	}
+}